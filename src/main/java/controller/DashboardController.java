@@ -1,9 +1,11 @@
 package controller;
 
 import javafx.beans.property.SimpleIntegerProperty;
+import javafx.beans.property.SimpleLongProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.scene.Node;
 import javafx.scene.chart.PieChart;
@@ -13,20 +15,26 @@ import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.VBox;
 import javafx.scene.chart.LineChart;
 import javafx.stage.Stage;
-import loganalyzer.Apache;
-import loganalyzer.ModSecurity;
+import search.Query;
+import stats.DashboardAggregate;
+import stats.DashboardRange;
+import stats.RollupStore;
 import ui.WebLogManager;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.time.Duration;
 import java.time.LocalDate;
-import java.time.ZoneId;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
-import static loganalyzer.ApacheParser.*;
-import static loganalyzer.ModSecurityParser.*;
 import static utility.IpLookUp.checkIP;
+import static utility.Utility.showInfo;
 
 public class DashboardController {
     @FXML
@@ -34,9 +42,15 @@ public class DashboardController {
     @FXML
     private LineChart<String, Number> logLineChart;
     @FXML
+    private LineChart<String, Number> sizeLineChart;
+    @FXML
+    private LineChart<String, Number> bytesLineChart;
+    @FXML
     private ComboBox<String> timeIntervalComboBox;
     @FXML
     private DatePicker datePicker;
+    @FXML
+    private DatePicker endDatePicker;
 //    @FXML
 //    private ComboBox<String> startTimeComboBox;
     @FXML
@@ -46,6 +60,10 @@ public class DashboardController {
     @FXML
     private TableColumn<String[], Integer> statusCodeCountColumn;
     @FXML
+    private TableColumn<String[], String> statusCodeSizeColumn;
+    @FXML
+    private TableColumn<String[], Long> statusCodeBytesColumn;
+    @FXML
     private TableView<String[]> timestampRankingTable;
     @FXML
     private TableColumn<String[], String> timestampColumn;
@@ -66,29 +84,106 @@ public class DashboardController {
     @FXML
     private TableColumn<String[], Integer> modsecRuleCountColumn;
     @FXML
+    private TableView<String[]> pathRankingTable;
+    @FXML
+    private TableColumn<String[], String> pathColumn;
+    @FXML
+    private TableColumn<String[], Integer> pathCountColumn;
+    @FXML
+    private TableColumn<String[], String> pathSizeColumn;
+    @FXML
+    private TableColumn<String[], Long> pathBytesColumn;
+    @FXML
+    private TableView<String[]> userAgentRankingTable;
+    @FXML
+    private TableColumn<String[], String> userAgentColumn;
+    @FXML
+    private TableColumn<String[], Integer> userAgentCountColumn;
+    @FXML
     private PieChart pieChartData;
 
-    private List<Apache> logEntries;
-    private List<ModSecurity> modsecEntries;
+    private static final long MINUTE_MILLIS = 60_000L;
+    private static final int RANKING_SIZE = 100;
+    private static final String AUTO_INTERVAL = "Auto";
+    private static final List<String> INTERVALS = List.of(
+            "15 Minutes", "30 Minutes", "1 Hour", "2 Hours", "6 Hours", "12 Hours", "1 Day");
+    // the automatic interval is the shortest one drawing at most this many points
+    private static final int MAX_AUTO_SLOTS = 100;
+    // the range keeps the minute counts of every day, so it is capped to about a quarter
+    private static final int MAX_RANGE_DAYS = 92;
+    private static final DateTimeFormatter SLOT_MINUTE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    private static final DateTimeFormatter SLOT_DAY_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    private static final Logger logger = Logger.getLogger(DashboardController.class.getName());
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "dashboard-rollup");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private DashboardRange range;
+    // interval of the displayed slots, the automatic one resolved
+    private String interval;
+    private Task<DashboardRange> loading;
 
     @FXML
     private void initialize() {
         try {
             LocalDate initialDate = LocalDate.now();
             datePicker.setValue(initialDate);
+            endDatePicker.setValue(initialDate);
             setupDatePicker();
-            logEntries = parseApacheByDate(datePicker);
-            modsecEntries = parseModSecByDate(datePicker);
             setupComboBox();
             setupStartTimeComboBox();
             setupTableViews();
-            displayLogsByInterval("15 Minutes", LocalDate.now());
+            RollupStore.startMaintenance(ip -> checkIP(ip));
+            loadRange();
             addClickListenerToMainVBox();
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Reads the rollups of the selected days in the background, one day at a time so only one day
+     * is in memory besides the minute counts and rankings of the range, and redraws the dashboard once it is done.
+     * The log files are only read for the lines the rollups do not cover yet. Changing the interval
+     * does not come here, the loaded range is re-bucketed instead.
+     */
+    private void loadRange() {
+        LocalDate first = datePicker.getValue();
+        LocalDate last = endDatePicker.getValue();
+        if (first == null || last == null) {
+            return;
+        }
+        if (loading != null) {
+            // no interrupt, it would close the file channels of a load in progress
+            loading.cancel(false);
+        }
+        Task<DashboardRange> task = new Task<>() {
+            @Override
+            protected DashboardRange call() {
+                DashboardRange loaded = new DashboardRange(first, last);
+                for (LocalDate day = first; !day.isAfter(last); day = day.plusDays(1)) {
+                    if (isCancelled()) {
+                        return null;
+                    }
+                    loaded.add(RollupStore.dayOf(day, ip -> checkIP(ip)));
+                }
+                return loaded;
+            }
+        };
+        task.setOnSucceeded(event -> {
+            if (loading == task) {
+                range = task.getValue();
+                displayRange();
+            }
+        });
+        task.setOnFailed(event -> logger.log(Level.WARNING, "Aggregating the dashboard failed.", task.getException()));
+        loading = task;
+        executor.execute(task);
+    }
+
     private void addClickListenerToMainVBox() {
         mainVBox.addEventFilter(MouseEvent.MOUSE_CLICKED, event -> {
             Node clickedNode = event.getPickResult().getIntersectedNode();
@@ -100,39 +195,54 @@ public class DashboardController {
     }
 
     private void setupComboBox() {
-        timeIntervalComboBox.setItems(FXCollections.observableArrayList(
-                "15 Minutes",
-                "30 Minutes",
-                "1 Hour",
-                "2 Hours",
-                "12 Hours",
-                "1 Day"
-        ));
+        ObservableList<String> intervals = FXCollections.observableArrayList(AUTO_INTERVAL);
+        intervals.addAll(INTERVALS);
+        timeIntervalComboBox.setItems(intervals);
+        timeIntervalComboBox.getSelectionModel().selectFirst();
         timeIntervalComboBox
                 .getSelectionModel()
                 .selectedItemProperty()
                 .addListener(
                         (observable, oldValue, newValue) -> {
                             try {
-                                displayLogsByInterval(newValue, datePicker.getValue());
+                                displayRange();
                             } catch (Exception e) {
                                 e.printStackTrace();
                             }
                         }
         );
-        timeIntervalComboBox.getSelectionModel().selectFirst();
     }
 
+    /**
+     * The end of the range follows its start when it would be earlier or more than MAX_RANGE_DAYS
+     * later, and the other way around.
+     */
     private void setupDatePicker() {
         datePicker.valueProperty().addListener((observable, oldValue, newValue) -> {
             try {
-                logEntries = parseApacheByDate(datePicker);
-                modsecEntries = parseModSecByDate(datePicker);
-                displayLogsByInterval(
-                        timeIntervalComboBox.getSelectionModel().getSelectedItem(),
-                        newValue
-                );
-                setupTableViews();
+                LocalDate end = endDatePicker.getValue();
+                if (newValue != null && end != null && end.isBefore(newValue)) {
+                    // reloads through the listener of the end date
+                    endDatePicker.setValue(newValue);
+                } else if (newValue != null && end != null && !end.isBefore(newValue.plusDays(MAX_RANGE_DAYS))) {
+                    endDatePicker.setValue(newValue.plusDays(MAX_RANGE_DAYS - 1L));
+                } else {
+                    loadRange();
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        endDatePicker.valueProperty().addListener((observable, oldValue, newValue) -> {
+            try {
+                LocalDate start = datePicker.getValue();
+                if (newValue != null && start != null && newValue.isBefore(start)) {
+                    datePicker.setValue(newValue);
+                } else if (newValue != null && start != null && !newValue.isBefore(start.plusDays(MAX_RANGE_DAYS))) {
+                    datePicker.setValue(newValue.minusDays(MAX_RANGE_DAYS - 1L));
+                } else {
+                    loadRange();
+                }
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -161,6 +271,8 @@ public class DashboardController {
     private void setupTableViews() {
         statusCodeColumn.setCellValueFactory(cellData -> new SimpleStringProperty(cellData.getValue()[0]));
         statusCodeCountColumn.setCellValueFactory(cellData -> new SimpleIntegerProperty(Integer.parseInt(cellData.getValue()[1])).asObject());
+        statusCodeSizeColumn.setCellValueFactory(cellData -> new SimpleStringProperty(cellData.getValue()[3]));
+        statusCodeBytesColumn.setCellValueFactory(cellData -> new SimpleLongProperty(Long.parseLong(cellData.getValue()[4])).asObject());
 
         timestampColumn.setCellValueFactory(cellData -> new SimpleStringProperty(cellData.getValue()[0]));
         timestampCountColumn.setCellValueFactory(cellData -> new SimpleIntegerProperty(Integer.parseInt(cellData.getValue()[1])).asObject());
@@ -172,6 +284,14 @@ public class DashboardController {
         modsecRuleColumn.setCellValueFactory(cellData -> new SimpleStringProperty(cellData.getValue()[0]));
         modsecRuleCountColumn.setCellValueFactory(cellData -> new SimpleIntegerProperty(Integer.parseInt(cellData.getValue()[1])).asObject());
 
+        pathColumn.setCellValueFactory(cellData -> new SimpleStringProperty(cellData.getValue()[0]));
+        pathCountColumn.setCellValueFactory(cellData -> new SimpleIntegerProperty(Integer.parseInt(cellData.getValue()[1])).asObject());
+        pathSizeColumn.setCellValueFactory(cellData -> new SimpleStringProperty(cellData.getValue()[3]));
+        pathBytesColumn.setCellValueFactory(cellData -> new SimpleLongProperty(Long.parseLong(cellData.getValue()[4])).asObject());
+
+        userAgentColumn.setCellValueFactory(cellData -> new SimpleStringProperty(cellData.getValue()[0]));
+        userAgentCountColumn.setCellValueFactory(cellData -> new SimpleIntegerProperty(Integer.parseInt(cellData.getValue()[1])).asObject());
+
         statusCodeRankingTable.setRowFactory(tv -> {
             TableRow<String[]> row = new TableRow<>();
             row.setOnMouseClicked(event -> {
@@ -215,237 +335,222 @@ public class DashboardController {
             });
             return row;
         });
+
+        pathRankingTable.setRowFactory(tv -> {
+            TableRow<String[]> row = new TableRow<>();
+            row.setOnMouseClicked(event -> {
+                if (event.getClickCount() == 2 && (!row.isEmpty())) {
+                    String[] rowData = row.getItem();
+                    handleFieldDoubleClick(rowData[0], "Request Path");
+                }
+            });
+            return row;
+        });
+
+        userAgentRankingTable.setRowFactory(tv -> {
+            TableRow<String[]> row = new TableRow<>();
+            row.setOnMouseClicked(event -> {
+                if (event.getClickCount() == 2 && (!row.isEmpty())) {
+                    String[] rowData = row.getItem();
+                    handleFieldDoubleClick(rowData[0], "User-Agent");
+                }
+            });
+            return row;
+        });
     }
 
-    private void displayLogsByInterval(String interval, LocalDate selectedDate) {
+    /**
+     * Redraws the dashboard from the loaded range, re-bucketed into the selected interval.
+     */
+    private void displayRange() {
+        String selected = timeIntervalComboBox.getSelectionModel().getSelectedItem();
+        if (range == null || selected == null) {
+            return;
+        }
+        interval = AUTO_INTERVAL.equals(selected) ? getAutoInterval(range.getFirst(), range.getLast()) : selected;
         XYChart.Series<String, Number> logSeries = new XYChart.Series<>();
         logSeries.setName("Log Count");
-
-        Map<String, Map<String, Integer>> groupedLogs = groupLogsByInterval(interval, selectedDate);
+        XYChart.Series<String, Number> ipSeries = new XYChart.Series<>();
+        ipSeries.setName("Distinct IPs");
+        XYChart.Series<String, Number> pathSeries = new XYChart.Series<>();
+        pathSeries.setName("Distinct Paths");
+        XYChart.Series<String, Number> userAgentSeries = new XYChart.Series<>();
+        userAgentSeries.setName("Distinct User-Agents");
+        XYChart.Series<String, Number> p50Series = new XYChart.Series<>();
+        p50Series.setName("p50");
+        XYChart.Series<String, Number> p95Series = new XYChart.Series<>();
+        p95Series.setName("p95");
+        XYChart.Series<String, Number> p99Series = new XYChart.Series<>();
+        p99Series.setName("p99");
+        XYChart.Series<String, Number> bytesSeries = new XYChart.Series<>();
+        bytesSeries.setName("Bytes Sent");
+
+        DateTimeFormatter dateFormat = getDateFormat(interval);
+        String slotInterval = interval;
+        List<DashboardAggregate.Slot> slots = range.slots(day -> getSlotMillis(slotInterval));
         logLineChart.getData().clear();
-        List<Map.Entry<String, Map<String, Integer>>> entries = new ArrayList<>(groupedLogs.entrySet());
-        entries.sort(Map.Entry.comparingByKey());
-        List<Map.Entry<String, Map<String, Integer>>> displayedEntries = entries;
+        sizeLineChart.getData().clear();
+        bytesLineChart.getData().clear();
 
-        for (Map.Entry<String, Map<String, Integer>> entry : displayedEntries) {
-            String timeSlot = entry.getKey();
+        for (DashboardAggregate.Slot slot : slots) {
+            String timeSlot = dateFormat.format(getSlotStart(slot));
             String timeOnly;
-            if (timeSlot.length() < 11) {
+            if (!range.isSingleDay()) {
+                // the categories of the axis must stay distinct across the days
+                timeOnly = range.getFirst().getYear() == range.getLast().getYear() ? timeSlot.substring(5) : timeSlot;
+            }
+            else if (timeSlot.length() < 11) {
                 timeOnly = timeSlot;
             }
             else {
                 timeOnly = timeSlot.substring(11, 16);
             }
-            Map<String, Integer> statusCounts = entry.getValue();
-            int totalLogs = statusCounts.values().stream().mapToInt(Integer::intValue).sum();
 
-            XYChart.Data<String, Number> data = new XYChart.Data<>(timeOnly, totalLogs);
+            XYChart.Data<String, Number> data = new XYChart.Data<>(timeOnly, slot.total());
 
             data.nodeProperty().addListener((observable, oldNode, newNode) -> {
                 if (newNode != null) {
-                    newNode.addEventHandler(MouseEvent.MOUSE_CLICKED, event -> {
-                        try {
-                            Stage primaryStage = (Stage) mainVBox.getScene().getWindow();
-                            ViewLogController.setComboBoxElementTick("Time Stamp");
-                            ViewLogController.setSearchBoxData(timeSlot);
-                            ViewLogController.setIpSearch(timeSlot);
-                            ViewLogController.setdbDate(datePicker);
-                            WebLogManager webLogManager = new WebLogManager();
-                            webLogManager.start(primaryStage, 3);
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                        }
-                    });
+                    newNode.addEventHandler(MouseEvent.MOUSE_CLICKED, event -> openTimeSlot(timeSlot));
                 }
             });
 
             logSeries.getData().add(data);
+            ipSeries.getData().add(new XYChart.Data<>(timeOnly, slot.distinctIps()));
+            pathSeries.getData().add(new XYChart.Data<>(timeOnly, slot.distinctPaths()));
+            userAgentSeries.getData().add(new XYChart.Data<>(timeOnly, slot.distinctUserAgents()));
+            p50Series.getData().add(new XYChart.Data<>(timeOnly, slot.sizes().p50()));
+            p95Series.getData().add(new XYChart.Data<>(timeOnly, slot.sizes().p95()));
+            p99Series.getData().add(new XYChart.Data<>(timeOnly, slot.sizes().p99()));
+            bytesSeries.getData().add(new XYChart.Data<>(timeOnly, slot.sizes().bytes()));
         }
 
-        logLineChart.getData().add(logSeries);
-        logLineChart.setLegendVisible(false);
-
-        updateStatusCodeRanking(groupedLogs);
-        updateTimestampRanking(groupedLogs);
-        updateIpRanking(selectedDate);
-        updateModsecRuleTable(selectedDate);
+        logLineChart.getData().addAll(List.of(logSeries, ipSeries, pathSeries, userAgentSeries));
+        logLineChart.setLegendVisible(true);
+        sizeLineChart.getData().addAll(List.of(p50Series, p95Series, p99Series));
+        bytesLineChart.getData().add(bytesSeries);
+
+        updateStatusCodeRanking();
+        updateTimestampRanking(slots, dateFormat);
+        updateIpRanking();
+        updateModsecRuleTable();
+        updateRanking(pathRankingTable, pathCountColumn, range.pathRanking(RANKING_SIZE));
+        updateRanking(userAgentRankingTable, userAgentCountColumn, range.userAgentRanking(RANKING_SIZE));
     }
 
-    private Map<String, Map<String, Integer>> groupLogsByInterval(String interval, LocalDate selectedDate) {
-        Map<String, Map<String, Integer>> groupedLogs = new TreeMap<>();
-        SimpleDateFormat dateFormat;
-        Calendar calendar = Calendar.getInstance();
-
-        int field = Calendar.MINUTE;
-        int amount = 15;
-
-        switch (interval) {
-            case "30 Minutes":
-                amount = 30;
-                break;
-            case "1 Hour":
-                field = Calendar.HOUR_OF_DAY;
-                amount = 1;
-                break;
-            case "2 Hours":
-                field = Calendar.HOUR_OF_DAY;
-                amount = 2;
-                break;
-            case "12 Hours":
-                field = Calendar.HOUR_OF_DAY;
-                amount = 12;
-                break;
-            case "1 Day":
-                field = Calendar.DAY_OF_MONTH;
-                amount = 1;
-                break;
-            default:
-                //todo: add something here?
-        }
-
-        dateFormat = getDateFormat(interval);
-
-//        String selectedTime = startTimeComboBox.getSelectionModel().getSelectedItem();
-        String selectedTime = "00:00";
-//        if (selectedTime == null) {
-//            selectedTime = "00:00";
-//        }
-        int startHour = Integer.parseInt(selectedTime.split(":")[0]);
-
-        for (Apache entry : logEntries) {
-            SimpleDateFormat sdf = new SimpleDateFormat("dd/MMM/yyyy:HH:mm:ss Z", Locale.ENGLISH);
-            try {
-                calendar.setTime(sdf.parse(entry.getTimestamp()));
-            } catch (ParseException e) {
-                throw new RuntimeException(e);
-            }
-            LocalDate entryDate = calendar.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
-            if (entryDate.equals(selectedDate) && calendar.get(Calendar.HOUR_OF_DAY) >= startHour) {
-                adjustCalendar(calendar, field, amount);
-                String timeSlot = dateFormat.format(calendar.getTime());
-                String statusRange = getStatusRange(entry.getStatusCode());
-
-                groupedLogs.computeIfAbsent(timeSlot, k -> new HashMap<>()).merge(statusRange, 1, Integer::sum);
+    /**
+     * @return the shortest interval drawing at most MAX_AUTO_SLOTS points over the days, "1 Day" at least
+     */
+    private static String getAutoInterval(LocalDate first, LocalDate last) {
+        long days = ChronoUnit.DAYS.between(first, last) + 1;
+        for (String candidate : INTERVALS) {
+            if (days * Duration.ofDays(1).toMillis() <= MAX_AUTO_SLOTS * getSlotMillis(candidate)) {
+                return candidate;
             }
         }
-
-        return groupedLogs;
+        return INTERVALS.get(INTERVALS.size() - 1);
     }
 
-    private SimpleDateFormat getDateFormat(String interval) {
+    private static long getSlotMillis(String interval) {
         return switch (interval) {
-            case "15 Minutes", "30 Minutes", "1 Hour", "2 Hours", "12 Hours" ->
-                    new SimpleDateFormat("yyyy-MM-dd HH:mm");
-            case "1 Day" -> new SimpleDateFormat("yyyy-MM-dd");
-            default -> throw new IllegalArgumentException("Unexpected interval: " + interval);
+            case "30 Minutes" -> 30 * MINUTE_MILLIS;
+            case "1 Hour" -> 60 * MINUTE_MILLIS;
+            case "2 Hours" -> 120 * MINUTE_MILLIS;
+            case "6 Hours" -> 360 * MINUTE_MILLIS;
+            case "12 Hours" -> 720 * MINUTE_MILLIS;
+            case "1 Day" -> Duration.ofDays(1).toMillis();
+            default -> 15 * MINUTE_MILLIS;
         };
     }
 
-    private void adjustCalendar(Calendar calendar, int field, int amount) {
-        if (field == Calendar.MINUTE) {
-            calendar.set(field, (calendar.get(field) / amount) * amount);
-        } else {
-            calendar.set(field, (calendar.get(field) / amount) * amount);
-            calendar.set(Calendar.MINUTE, 0);
-        }
-        calendar.set(Calendar.SECOND, 0);
-        calendar.set(Calendar.MILLISECOND, 0);
+    /**
+     * @return the wall-clock time the slot starts at, as printed in the log
+     */
+    private static LocalDateTime getSlotStart(DashboardAggregate.Slot slot) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(slot.start(), 1000L), 0, ZoneOffset.UTC);
     }
 
-    private String getStatusRange(int statusCode) {
-        if (statusCode >= 200 && statusCode < 300) {
-            return "200-299";
-        } else if (statusCode >= 300 && statusCode < 400) {
-            return "300-399";
-        } else if (statusCode >= 400 && statusCode < 500) {
-            return "400-499";
-        } else if (statusCode >= 500 && statusCode < 600) {
-            return "500-599";
-        } else {
-            return "Other";
-        }
+    /**
+     * @param timeSlot: a slot of the line chart, as formatted by getDateFormat
+     */
+    private static LocalDateTime getSlotStart(String timeSlot) {
+        return timeSlot.length() < 11
+                ? LocalDate.parse(timeSlot, SLOT_DAY_FORMAT).atStartOfDay()
+                : LocalDateTime.parse(timeSlot, SLOT_MINUTE_FORMAT);
     }
 
-    private void updateStatusCodeRanking(Map<String, Map<String, Integer>> groupedLogs) {
-        Map<String, Integer> statusCodeCounts = new HashMap<>();
+    /**
+     * @return a search for the lines of that slot only, e.g. from:"2024-05-01 10:15" before:"2024-05-01 10:30"
+     */
+    private String getSlotQuery(LocalDateTime slotStart) {
+        LocalDateTime slotEnd = slotStart.plus(Duration.ofMillis(getSlotMillis(interval)));
+        return String.format("%s:\"%s\" %s:\"%s\"", Query.FROM, SLOT_MINUTE_FORMAT.format(slotStart),
+                Query.BEFORE, SLOT_MINUTE_FORMAT.format(slotEnd));
+    }
 
-        for (Map<String, Integer> statusCounts : groupedLogs.values()) {
-            for (Map.Entry<String, Integer> entry : statusCounts.entrySet()) {
-                statusCodeCounts.merge(entry.getKey(), entry.getValue(), Integer::sum);
-            }
+    /**
+     * Opens the log view on the lines of one slot of the line chart, on the day of the slot.
+     */
+    private void openTimeSlot(String timeSlot) {
+        try {
+            Stage primaryStage = (Stage) mainVBox.getScene().getWindow();
+            LocalDateTime slotStart = getSlotStart(timeSlot);
+            String slotQuery = getSlotQuery(slotStart);
+            ViewLogController.setComboBoxElementTick(null);
+            ViewLogController.setSearchBoxData(slotQuery);
+            ViewLogController.setIpSearch(slotQuery);
+            ViewLogController.setdbDate(new DatePicker(slotStart.toLocalDate()));
+            WebLogManager webLogManager = new WebLogManager();
+            webLogManager.start(primaryStage, 3);
+        } catch (Exception e) {
+            e.printStackTrace();
         }
+    }
 
+    private DateTimeFormatter getDateFormat(String interval) {
+        return switch (interval) {
+            case "15 Minutes", "30 Minutes", "1 Hour", "2 Hours", "6 Hours", "12 Hours" -> SLOT_MINUTE_FORMAT;
+            case "1 Day" -> SLOT_DAY_FORMAT;
+            default -> throw new IllegalArgumentException("Unexpected interval: " + interval);
+        };
+    }
+
+    private void updateStatusCodeRanking() {
         ObservableList<String[]> items = statusCodeRankingTable.getItems();
         items.clear();
 
-        List<Map.Entry<String, Integer>> sortedStatusCodes = new ArrayList<>(statusCodeCounts.entrySet());
-        sortedStatusCodes.sort((e1, e2) -> e2.getValue().compareTo(e1.getValue()));
-
-        for (Map.Entry<String, Integer> entry : sortedStatusCodes) {
-            items.add(new String[]{entry.getKey(), entry.getValue().toString()});
+        for (DashboardAggregate.Ranked statusClass : range.statusClassRanking()) {
+            items.add(new String[]{statusClass.name(), String.valueOf(statusClass.count()), null,
+                    formatPercentiles(statusClass.sizes()), String.valueOf(statusClass.sizes().bytes())});
         }
     }
 
-    private void updateTimestampRanking(Map<String, Map<String, Integer>> groupedLogs) {
-        List<Map.Entry<String, Map<String, Integer>>> sortedTimestamps = new ArrayList<>(groupedLogs.entrySet());
-        sortedTimestamps.sort((e1, e2) -> {
-            int sum1 = e1.getValue().values().stream().mapToInt(Integer::intValue).sum();
-            int sum2 = e2.getValue().values().stream().mapToInt(Integer::intValue).sum();
-            return Integer.compare(sum2, sum1);
-        });
+    private void updateTimestampRanking(List<DashboardAggregate.Slot> slots, DateTimeFormatter dateFormat) {
+        List<DashboardAggregate.Slot> sortedTimestamps = new ArrayList<>(slots);
+        sortedTimestamps.sort((s1, s2) -> Integer.compare(s2.total(), s1.total()));
 
         ObservableList<String[]> items = timestampRankingTable.getItems();
         items.clear();
 
         int limit = Math.min(sortedTimestamps.size(), 7);
         for (int i = 0; i < limit; i++) {
-            Map.Entry<String, Map<String, Integer>> entry = sortedTimestamps.get(i);
-            int sum = entry.getValue().values().stream().mapToInt(Integer::intValue).sum();
-            items.add(new String[]{entry.getKey(), String.valueOf(sum)});
+            DashboardAggregate.Slot slot = sortedTimestamps.get(i);
+            items.add(new String[]{dateFormat.format(getSlotStart(slot)),
+                    String.valueOf(slot.total())});
         }
     }
 
-    private void updateIpRanking(LocalDate selectedDate) {
-        Map<String, Integer> ipCounts = new HashMap<>();
-        Map<String, Integer> countryCounts = new HashMap<>();
-
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.ENGLISH);
-
-        for (Apache entry : logEntries) {
-            LocalDate logDate = LocalDate.parse(entry.getTimestamp(), formatter);
-            if (logDate.equals(selectedDate)) {
-                ipCounts.merge(entry.getRemoteAddress(), 1, Integer::sum);
-                countryCounts.merge(checkIP(entry.getRemoteAddress()), 1, Integer::sum);
-            }
-        }
-
-        ObservableList<String[]> items = ipRankingTable.getItems();
-        items.clear();
-
-        List<Map.Entry<String, Integer>> sortedIps = new ArrayList<>(ipCounts.entrySet());
-        sortedIps.sort((e1, e2) -> e2.getValue().compareTo(e1.getValue()));
-
-        List<Map.Entry<String, Integer>> sortedCountries = new ArrayList<>(countryCounts.entrySet());
-        sortedCountries.sort((e1, e2) -> e2.getValue().compareTo(e1.getValue()));
+    private void updateIpRanking() {
+        updateRanking(ipRankingTable, ipCountColumn, range.ipRanking(RANKING_SIZE));
 
         ObservableList<PieChart.Data> piechartActualData = FXCollections.observableArrayList();
 
-        for (Map.Entry<String, Integer> entry : sortedIps) {
-            String ipAddress = entry.getKey();
-            int count = entry.getValue();
-            String country = checkIP(ipAddress);
-            items.add(new String[]{ipAddress, String.valueOf(count), country});
-        }
-
         int count = 0;
-        for (Map.Entry<String, Integer> entry : sortedCountries) {
+        for (DashboardAggregate.Ranked country : range.countryRanking()) {
             if (count >= 6) {
                 break;
             }
-            String country = entry.getKey();
-            int countryCount = entry.getValue();
-            if (!Objects.equals(country, "N/A")) {
-                piechartActualData.add(new PieChart.Data(country, countryCount));
+            if (!Objects.equals(country.name(), DashboardAggregate.UNKNOWN_COUNTRY)) {
+                piechartActualData.add(new PieChart.Data(country.name(), country.count()));
                 count++;
             }
         }
@@ -454,37 +559,73 @@ public class DashboardController {
         pieChartData.setLegendVisible(false);
     }
 
-    private void updateModsecRuleTable(LocalDate selectedDate) {
-        Map<String, Integer> ruleCounts = new HashMap<>();
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss.SSSSSS Z", Locale.ENGLISH);
+    private void updateModsecRuleTable() {
+        updateRanking(ruleCountTable, modsecRuleCountColumn, range.ruleRanking(RANKING_SIZE));
+    }
+
+    /**
+     * Shows the first entries of a ranking. When its counts are estimates, the count column tells
+     * by how much they may exceed the true counts.
+     */
+    private static void updateRanking(TableView<String[]> table, TableColumn<String[], Integer> countColumn,
+                                      List<DashboardAggregate.Ranked> ranking) {
+        ObservableList<String[]> items = table.getItems();
+        items.clear();
 
-        for (ModSecurity entry : modsecEntries) {
-            LocalDate logDate = LocalDate.parse(entry.getTimestamp(), formatter);
-            if (logDate.equals(selectedDate)) {
-                ruleCounts.merge(entry.getAttackName(), 1, Integer::sum);
+        int maxError = 0;
+        for (DashboardAggregate.Ranked entry : ranking) {
+            if (entry.sizes() != null) {
+                items.add(new String[]{entry.name(), String.valueOf(entry.count()), entry.detail(),
+                        formatPercentiles(entry.sizes()), String.valueOf(entry.sizes().bytes())});
+            } else {
+                items.add(new String[]{entry.name(), String.valueOf(entry.count()), entry.detail()});
             }
+            maxError = Math.max(maxError, entry.error());
         }
+        countColumn.setText(maxError > 0 ? "Count (±" + maxError + ")" : "Count");
+    }
 
-        ObservableList<String[]> items = ruleCountTable.getItems();
-        items.clear();
+    /**
+     * @return e.g. "512 B / 3.1 KB / 1.2 MB"
+     */
+    private static String formatPercentiles(DashboardAggregate.Sizes sizes) {
+        return formatSize(sizes.p50()) + " / " + formatSize(sizes.p95()) + " / " + formatSize(sizes.p99());
+    }
 
-        List<Map.Entry<String, Integer>> sortedRules = new ArrayList<>(ruleCounts.entrySet());
-        sortedRules.sort((e1, e2) -> e2.getValue().compareTo(e1.getValue()));
+    private static String formatSize(long bytes) {
+        String[] units = {"B", "KB", "MB", "GB", "TB"};
+        double size = bytes;
+        int unit = 0;
+        while (size >= 1024 && unit < units.length - 1) {
+            size /= 1024;
+            unit++;
+        }
+        return unit == 0 ? bytes + " B" : String.format("%.1f %s", size, units[unit]);
+    }
 
-        for (Map.Entry<String, Integer> entry : sortedRules) {
-            String rule = entry.getKey();
-            int count = entry.getValue();
-            items.add(new String[]{rule, String.valueOf(count)});
+    /**
+     * The log views filter a single day, so drill-downs other than on a slot need one.
+     * @return whether the range is a single day, tells the user otherwise
+     */
+    private boolean checkSingleDay() {
+        if (range != null && range.isSingleDay()) {
+            return true;
         }
+        showInfo("Single day only", "Select a single day to open the matching logs, "
+                + "or double-click a time slot to open its day.");
+        return false;
     }
 
     private void handleStatusCodeDoubleClick (String statusCode) {
+        if (!checkSingleDay()) {
+            return;
+        }
         try {
             Stage primaryStage = (Stage) mainVBox.getScene().getWindow();
             ViewLogController.setSearchBoxData(statusCode);
             ViewLogController.setComboBoxElementTick("Status Code");
             ViewLogController.setIpSearch(statusCode);
-            ViewLogController.setdbDate(datePicker);
+            ViewLogController.setdbDate(new DatePicker(range.getFirst()));
             WebLogManager webLogManager = new WebLogManager();
             webLogManager.start(primaryStage, 3);
         } catch (Exception e) {
@@ -493,12 +634,19 @@ public class DashboardController {
     }
 
     private void handleTimeStampDoubleClick (String timeStamp) {
+        openTimeSlot(timeStamp);
+    }
+
+    private void handleIpDoubleClick(String ipAddress) {
+        if (!checkSingleDay()) {
+            return;
+        }
         try {
             Stage primaryStage = (Stage) mainVBox.getScene().getWindow();
-            ViewLogController.setSearchBoxData(timeStamp);
-            ViewLogController.setComboBoxElementTick("Time Stamp");
-            ViewLogController.setIpSearch(timeStamp);
-            ViewLogController.setdbDate(datePicker);
+            ViewLogController.setSearchBoxData(ipAddress);
+            ViewLogController.setComboBoxElementTick("IP Address");
+            ViewLogController.setIpSearch(ipAddress);
+            ViewLogController.setdbDate(new DatePicker(range.getFirst()));
             WebLogManager webLogManager = new WebLogManager();
             webLogManager.start(primaryStage, 3);
         } catch (Exception e) {
@@ -506,13 +654,19 @@ public class DashboardController {
         }
     }
 
-    private void handleIpDoubleClick(String ipAddress) {
+    /**
+     * Opens the log view filtered on one field, e.g. "Request Path".
+     */
+    private void handleFieldDoubleClick(String value, String field) {
+        if (!checkSingleDay()) {
+            return;
+        }
         try {
             Stage primaryStage = (Stage) mainVBox.getScene().getWindow();
-            ViewLogController.setSearchBoxData(ipAddress);
-            ViewLogController.setComboBoxElementTick("IP Address");
-            ViewLogController.setIpSearch(ipAddress);
-            ViewLogController.setdbDate(datePicker);
+            ViewLogController.setSearchBoxData(value);
+            ViewLogController.setComboBoxElementTick(field);
+            ViewLogController.setIpSearch(value);
+            ViewLogController.setdbDate(new DatePicker(range.getFirst()));
             WebLogManager webLogManager = new WebLogManager();
             webLogManager.start(primaryStage, 3);
         } catch (Exception e) {
@@ -521,12 +675,15 @@ public class DashboardController {
     }
 
     private void handleModSecDoubleClick(String rule) {
+        if (!checkSingleDay()) {
+            return;
+        }
         try {
             Stage primaryStage = (Stage) mainVBox.getScene().getWindow();
             ViewModSecController.setSearchField(rule);
             ViewModSecController.setComboBoxElementTick("Attack Name");
             ViewModSecController.setdbRule(rule);
-            ViewModSecController.setdbDate(datePicker);
+            ViewModSecController.setdbDate(new DatePicker(range.getFirst()));
             WebLogManager webLogManager = new WebLogManager();
             webLogManager.start(primaryStage, 4);
         } catch (Exception e) {
@@ -25,6 +25,7 @@ import javax.swing.ProgressMonitorInputStream;
 
 import utility.Utility;
 import entrypoint.Config;
+import loganalyzer.DayCache;
 import utility.LogFileVerifier;
 
 public class OptionController {
@@ -224,6 +225,8 @@ public class OptionController {
                 apacheLogLocationTF.getText()
         );
         Config.loadConfig();
+        // days read from the previous location are of no use anymore
+        DayCache.clear();
     }
 
     @FXML
@@ -233,5 +236,7 @@ public class OptionController {
                 modsecLogLocationTF.getText()
         );
         Config.loadConfig();
+        // days read from the previous location are of no use anymore
+        DayCache.clear();
     }
 }
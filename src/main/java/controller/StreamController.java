@@ -145,7 +145,11 @@ public class StreamController {
             @Override
             public void handle(String line) {
                 logger.log(Level.FINE, "[{0}] new line added: {1}", new Object[]{fileToStreamPath, line});
-                rows.add(parseLogLine(line));
+                Apache parsed = parseLogLine(line);
+                if (parsed == null) {
+                    return;
+                }
+                rows.add(parsed);
                 mainStreamTable.setItems(rows);
             }
         };
@@ -1,5 +1,6 @@
 package controller;
 
+import javafx.application.Platform;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
@@ -13,16 +14,25 @@ import javafx.scene.layout.VBox;
 import javafx.scene.text.Text;
 
 import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import ui.ComboBoxItemWrap;
+import ui.FilterRunner;
+import ui.VirtualRowList;
 import loganalyzer.Apache;
-import static loganalyzer.ApacheParser.parseApacheByDate;
+import loganalyzer.ApacheRows;
+import loganalyzer.LazyApacheLog;
+import entrypoint.Config;
+import search.Query;
+import search.SearchColumns;
+import search.SearchTarget;
+import static loganalyzer.ApacheParser.loadLazyApacheByDate;
 
 public class ViewLogController {
     @FXML
@@ -49,6 +59,10 @@ public class ViewLogController {
     public DatePicker datePicker;
     @FXML
     private ComboBox<ComboBoxItemWrap<String>> filterComboBox;
+    @FXML
+    private CheckBox regexCheckBox;
+    @FXML
+    private ProgressIndicator searchProgress;
 
     private static String dbSearch;
     private static DatePicker dbDate;
@@ -57,6 +71,10 @@ public class ViewLogController {
     private final Logger logger = Logger.getLogger(ViewLogController.class.getName());
 
     private List<String> appliedFilter = new LinkedList<>();
+    // shared by the views opened on the same day, so a drill-down reuses the indexes of the last search
+    private static LazyApacheLog dayRows;
+    private static SearchTarget searchTarget;
+    private FilterRunner<Apache> filterRunner;
 
     private final ObservableList<ComboBoxItemWrap<String>> filterList = FXCollections.observableArrayList(
             new ComboBoxItemWrap<>("IP Address"),
@@ -93,6 +111,7 @@ public class ViewLogController {
 
     @FXML
     private void initialize() {
+        filterRunner = new FilterRunner<>(Table, searchProgress);
         filterComboBox.setItems(filterList);
         filterComboBox.setCellFactory( c -> {
             ListCell<ComboBoxItemWrap<String>> cell = new ListCell<>(){
@@ -136,6 +155,8 @@ public class ViewLogController {
                 case "Time Stamp":
                 case "Status Code":
                 case "IP Address":
+                case "Request Path":
+                case "User-Agent":
                     filterComboBox.setPromptText(comboBoxElementToBeTicked);
                     filterList.stream()
                             .filter(item -> item.getItem().equals(comboBoxElementToBeTicked))
@@ -166,21 +187,7 @@ public class ViewLogController {
 
         searchField.setOnKeyPressed(event -> {
             if (event.getCode() == KeyCode.ENTER) {
-                try {
-                    if (getNumberOfSelectedFilter().get() > 0) {
-                        appliedFilter.clear();
-                        filterComboBox.getItems()
-                                .filtered(ComboBoxItemWrap::getCheck)
-                                .forEach(item -> appliedFilter.add(item.getItem())
-                        );
-                        viewLog(appliedFilter);
-                    } else {
-                        viewLog();
-                    }
-                } catch (Exception e) {
-                    // which has exception here ? @fieryphoenix
-                    logger.log(Level.INFO, "An exception occurred", e);
-                }
+                search();
             }
         });
 
@@ -194,6 +201,29 @@ public class ViewLogController {
         } catch (Exception e) {
             logger.log(Level.INFO, "An exception occurred", e);
         }
+
+        // typing refines the view once the analyst pauses, Enter searches right away
+        searchField.textProperty().addListener((observable, oldValue, newValue) ->
+            filterRunner.runDebounced(this::search)
+        );
+        regexCheckBox.selectedProperty().addListener((observable, oldValue, newValue) -> search());
+    }
+
+    private void search() {
+        try {
+            if (getNumberOfSelectedFilter().get() > 0) {
+                appliedFilter.clear();
+                filterComboBox.getItems()
+                        .filtered(ComboBoxItemWrap::getCheck)
+                        .forEach(item -> appliedFilter.add(item.getItem())
+                );
+                viewLog(appliedFilter);
+            } else {
+                viewLog();
+            }
+        } catch (Exception e) {
+            logger.log(Level.INFO, "An exception occurred", e);
+        }
     }
 
     private void updateComboBoxPromptText(ComboBox<ComboBoxItemWrap<String>> comboBox) {
@@ -230,8 +260,10 @@ public class ViewLogController {
         LogTable(Table, searchField.getText(), appliedFilter);
     }
 
+    /**
+     * Sets up the table, then loads and filters the selected day in the background.
+     */
     public void LogTable(TableView<Apache> tableView, String textField, List<String> appliedFilter) {
-        tableView.getItems().clear();
         tableView.getColumns().clear();
 
         ipColumn.setCellValueFactory(cellData -> new SimpleStringProperty(cellData.getValue().getRemoteAddress()));
@@ -245,17 +277,6 @@ public class ViewLogController {
 
         tableView.getColumns().addAll(ipColumn, timestampColumn, methodColumn, protocolColumn, requestPathColumn, statusCodeColumn, contentLengthColumn, userAgentColumn);
 
-        ObservableList<Apache> rows = FXCollections.observableArrayList();
-
-        List<Apache> logEntries = parseApacheByDate(datePicker);
-
-        for (Apache row: logEntries) {
-            if (containsTextField(row, textField, appliedFilter)) {
-                rows.add(row);
-            }
-        }
-
-        tableView.setItems(rows);
         tableView.setEditable(true);
 
         tableView.setRowFactory(tv -> {
@@ -268,6 +289,40 @@ public class ViewLogController {
             });
             return row;
         });
+
+        // the filter runs on another thread, so it only gets copies of the UI state
+        Query query = compileSearch(textField, new ArrayList<>(appliedFilter), regexCheckBox.isSelected());
+        long timeBudget = Config.getSearchTimeBudgetMillis();
+        LocalDate date = datePicker.getValue();
+        filterRunner.run(() -> {
+            // loaded outside any lock, so a superseded load is interrupted instead of queued behind
+            LazyApacheLog dayLog = loadLazyApacheByDate(date);
+            if (Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Superseded load of " + date);
+            }
+            SearchTarget target = targetOf(dayLog);
+            // a log truncated or replaced under the rows is read again, the DayCache sees it changed
+            dayLog.setOnStale(() -> Platform.runLater(this::search));
+            BitSet matches = query.matchingRows(target, timeBudget);
+            return new VirtualRowList<>(matches.stream().toArray(), dayLog::get, sortKeys(dayLog, target));
+        });
+    }
+
+    /**
+     * Every column sorts on an int per row of the loaded day: the rows are in time order, the
+     * numbers are stored per row, and the text columns rank their dictionary ids.
+     */
+    private Map<TableColumn<Apache, ?>, Supplier<IntUnaryOperator>> sortKeys(ApacheRows rows, SearchTarget target) {
+        Map<TableColumn<Apache, ?>, Supplier<IntUnaryOperator>> keys = new HashMap<>();
+        keys.put(ipColumn, () -> SearchColumns.sortKey(target, SearchColumns.IP));
+        keys.put(timestampColumn, () -> row -> row);
+        keys.put(methodColumn, () -> SearchColumns.sortKey(target, SearchColumns.METHOD));
+        keys.put(protocolColumn, () -> SearchColumns.sortKey(target, SearchColumns.PROTOCOL));
+        keys.put(requestPathColumn, () -> SearchColumns.sortKey(target, SearchColumns.PATH));
+        keys.put(statusCodeColumn, () -> rows::statusCode);
+        keys.put(contentLengthColumn, () -> rows::contentLength);
+        keys.put(userAgentColumn, () -> SearchColumns.sortKey(target, SearchColumns.USER_AGENT));
+        return keys;
     }
 
     private static void showRowContent(Apache rowData) {
@@ -292,73 +347,52 @@ public class ViewLogController {
         dialog.showAndWait();
     }
 
-    public static boolean containsTextField(Apache apache, String textField, List<String> fields) {
-        boolean found = false;
-        String ip = apache.getRemoteAddress();
-        String timestamp = apache.getTimestamp();
-        String method = apache.getMethod();
-        String protocol = apache.getProtocol();
-        String requestPath = apache.getRequestPath();
-        int statusCode = apache.getStatusCode();
-        String userAgent = apache.getUserAgent();
+    /**
+     * The day is read through the shared DayCache, the search target is only rebuilt when the cache
+     * hands out another day, i.e. the date changed or the log file was modified.
+     */
+    private static synchronized SearchTarget targetOf(LazyApacheLog rows) {
+        if (rows != dayRows) {
+            dayRows = rows;
+            searchTarget = SearchColumns.apacheTarget(rows);
+        }
+        return searchTarget;
+    }
 
+    private static String fieldOf(String filter) {
+        return switch (filter) {
+            case "IP Address" -> SearchColumns.IP;
+            case "Time Stamp" -> Query.AFTER;
+            case "Method" -> SearchColumns.METHOD;
+            case "Protocol" -> SearchColumns.PROTOCOL;
+            case "Request Path" -> SearchColumns.PATH;
+            case "Status Code" -> Query.STATUS;
+            case "User-Agent" -> SearchColumns.USER_AGENT;
+            default -> null;
+        };
+    }
+
+    /**
+     * Compiles the search box into a query. Without checked filters the text is read with the
+     * query syntax, otherwise it must match every checked field.
+     * @param regex: the text is a regular expression, matched on any column without checked filters
+     */
+    public static Query compileSearch(String textField, List<String> fields, boolean regex) {
+        if (regex && textField != null && !textField.isEmpty() && fields.isEmpty()) {
+            return Query.regex(null, textField);
+        }
         if (fields.isEmpty()) {
-            return ip.contains(textField) ||
-                    timestamp.contains(textField) ||
-                    method.contains(textField) ||
-                    protocol.contains(textField) ||
-                    requestPath.contains(textField) ||
-                    userAgent.contains(textField);
+            return Query.compile(textField);
         }
-        for (String field : fields) {
-            found = switch (field) {
-                case "IP Address" -> textField != null && ip.contains(textField);
-                case "Time Stamp" -> {
-                    DateTimeFormatter APACHE_TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z");
-                    DateTimeFormatter TEXTFIELD_TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
-
-                    if (textField != null) {
-                        try {
-                            LocalDateTime apacheDateTime = LocalDateTime.parse(timestamp, APACHE_TIMESTAMP_FORMATTER);
-                            LocalDateTime textFieldDateTime = LocalDateTime.parse(textField, TEXTFIELD_TIMESTAMP_FORMATTER);
-                            yield apacheDateTime.isAfter(textFieldDateTime);
-                        } catch (Exception e) {
-                            yield false;
-                        }
-                    } else {
-                        yield false;
-                    }
-                }
-                case "Method" -> textField != null && method.contains(textField);
-                case "Protocol" -> textField != null && protocol.contains(textField);
-                case "Request Path" -> textField != null && requestPath.contains(textField);
-                case "Status Code" -> {
-                    if (textField != null) {
-                        if (textField.contains("-")) {
-                            String[] range = textField.split("-");
-                            if (range.length == 2) {
-                                try {
-                                    int lowerBound = Integer.parseInt(range[0]);
-                                    int upperBound = Integer.parseInt(range[1]);
-                                    yield statusCode >= lowerBound && statusCode <= upperBound;
-                                } catch (NumberFormatException e) {
-                                    yield false;
-                                }
-                            } else {
-                                yield false;
-                            }
-                        } else {
-                            yield Integer.toString(statusCode).contains(textField);
-                        }
-                    } else {
-                        yield false;
-                    }
-                }
-                case "User-Agent" -> textField != null && userAgent.contains(textField);
-                default -> found;
-            };
-            if (!found) break;
+        List<Query> clauses = new ArrayList<>();
+        for (String filter : fields) {
+            String field = fieldOf(filter);
+            if (field == null) {
+                continue;
+            }
+            String value = textField == null ? "" : textField;
+            clauses.add(regex && !value.isEmpty() ? Query.regex(field, value) : Query.field(field, value));
         }
-        return found;
+        return Query.allOf(clauses);
     }
-}
\ No newline at end of file
+}
@@ -12,15 +12,23 @@ import javafx.scene.layout.VBox;
 import javafx.scene.text.Text;
 
 import java.time.LocalDate;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import loganalyzer.ModSecurity;
+import loganalyzer.TimestampDecoder;
+import entrypoint.Config;
+import search.Query;
+import search.SearchColumns;
+import search.SearchTarget;
 import ui.ComboBoxItemWrap;
+import ui.FilterRunner;
+import ui.VirtualRowList;
 
 import static loganalyzer.ModSecurityParser.*;
 
@@ -50,12 +58,20 @@ public class ViewModSecController {
     private DatePicker datePicker;
     @FXML
     private ComboBox<ComboBoxItemWrap<String>> filterComboBox;
+    @FXML
+    private CheckBox regexCheckBox;
+    @FXML
+    private ProgressIndicator searchProgress;
     private static String dbRule;
     private static DatePicker dbDate;
     private static String comboBoxElementToBeTicked;
     private static String searchBoxData;
     private final Logger logger = Logger.getLogger(ViewModSecController.class.getName());
     private List<String> appliedFilter = new LinkedList<>();
+    // shared by the views opened on the same day, so a drill-down reuses the indexes of the last search
+    private static List<ModSecurity> modSecEntries;
+    private static SearchTarget searchTarget;
+    private FilterRunner<ModSecurity> filterRunner;
 
     private final ObservableList<ComboBoxItemWrap<String>> filterList = FXCollections.observableArrayList(
             new ComboBoxItemWrap<>("Remote Address"),
@@ -89,6 +105,7 @@ public class ViewModSecController {
 
     @FXML
     private void initialize() {
+        filterRunner = new FilterRunner<>(modSecurityLogTable, searchProgress);
         filterComboBox.setCellFactory( c -> {
             ListCell<ComboBoxItemWrap<String>> cell = new ListCell<>(){
                 @Override
@@ -161,19 +178,7 @@ public class ViewModSecController {
 
         searchField.setOnKeyPressed(event -> {
             if (event.getCode() == KeyCode.ENTER) {
-                try {
-                    if (getNumberOfSelectedFilter().get() > 0) {
-                        appliedFilter.clear();
-                        filterComboBox.getItems()
-                                .filtered(ComboBoxItemWrap::getCheck)
-                                .forEach(item -> appliedFilter.add(item.getItem()));
-                        viewLog(appliedFilter);
-                    } else {
-                        viewLog();
-                    }
-                } catch (Exception e) {
-                    logger.log(Level.INFO, "An exception occurred", e);
-                }
+                search();
             }
         });
 
@@ -187,6 +192,28 @@ public class ViewModSecController {
         } catch (Exception e) {
             logger.log(Level.INFO, "An exception occurred", e);
         }
+
+        // typing refines the view once the analyst pauses, Enter searches right away
+        searchField.textProperty().addListener((observable, oldValue, newValue) ->
+            filterRunner.runDebounced(this::search)
+        );
+        regexCheckBox.selectedProperty().addListener((observable, oldValue, newValue) -> search());
+    }
+
+    private void search() {
+        try {
+            if (getNumberOfSelectedFilter().get() > 0) {
+                appliedFilter.clear();
+                filterComboBox.getItems()
+                        .filtered(ComboBoxItemWrap::getCheck)
+                        .forEach(item -> appliedFilter.add(item.getItem()));
+                viewLog(appliedFilter);
+            } else {
+                viewLog();
+            }
+        } catch (Exception e) {
+            logger.log(Level.INFO, "An exception occurred", e);
+        }
     }
 
     private void updateComboBoxPromptText(ComboBox<ComboBoxItemWrap<String>> comboBox) {
@@ -225,7 +252,6 @@ public class ViewModSecController {
     public void initializeLogTable(TableView<ModSecurity> tableView,
                                    String textField, DatePicker datePicker,
                                    List<String> appliedFilter) {
-        tableView.getItems().clear();
         tableView.getColumns().clear();
 
         timestampColumn.setCellValueFactory(cellData -> new SimpleStringProperty(cellData.getValue().getTimestamp()));
@@ -239,17 +265,6 @@ public class ViewModSecController {
 
         tableView.getColumns().addAll(timestampColumn, ipColumn, pathColumn, methodColumn, userAgentColumn, attackNameColumn, attackDataColumn, severityColumn);
 
-        ObservableList<ModSecurity> rows = FXCollections.observableArrayList();
-
-        List<ModSecurity> modSecEntries = parseModSecByDate(datePicker);
-
-        for (ModSecurity rowData : modSecEntries) {
-            if (containsTextField(rowData, textField, appliedFilter)) {
-                rows.add(rowData);
-            }
-        }
-
-        tableView.setItems(rows);
         tableView.setEditable(true);
 
         tableView.setRowFactory(tv -> {
@@ -262,6 +277,38 @@ public class ViewModSecController {
             });
             return row;
         });
+
+        // the filter runs on another thread, so it only gets copies of the UI state
+        Query query = compileSearch(textField, new ArrayList<>(appliedFilter), regexCheckBox.isSelected());
+        long timeBudget = Config.getSearchTimeBudgetMillis();
+        LocalDate date = datePicker.getValue();
+        filterRunner.run(() -> {
+            // loaded outside any lock, so a superseded load is interrupted instead of queued behind
+            List<ModSecurity> dayEntries = parseModSecByDate(date);
+            if (Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Superseded load of " + date);
+            }
+            SearchTarget target = targetOf(dayEntries);
+            BitSet matches = query.matchingRows(target, timeBudget);
+            return new VirtualRowList<>(matches.stream().toArray(), dayEntries::get, sortKeys(target));
+        });
+    }
+
+    /**
+     * Every column sorts on an int per row of the loaded day: the rows are in time order, and the
+     * text columns rank their dictionary ids.
+     */
+    private Map<TableColumn<ModSecurity, ?>, Supplier<IntUnaryOperator>> sortKeys(SearchTarget target) {
+        Map<TableColumn<ModSecurity, ?>, Supplier<IntUnaryOperator>> keys = new HashMap<>();
+        keys.put(timestampColumn, () -> row -> row);
+        keys.put(ipColumn, () -> SearchColumns.sortKey(target, SearchColumns.IP));
+        keys.put(pathColumn, () -> SearchColumns.sortKey(target, SearchColumns.PATH));
+        keys.put(methodColumn, () -> SearchColumns.sortKey(target, SearchColumns.METHOD));
+        keys.put(userAgentColumn, () -> SearchColumns.sortKey(target, SearchColumns.USER_AGENT));
+        keys.put(attackNameColumn, () -> SearchColumns.sortKey(target, SearchColumns.ATTACK_NAME));
+        keys.put(attackDataColumn, () -> SearchColumns.sortKey(target, SearchColumns.ATTACK_DATA));
+        keys.put(severityColumn, () -> SearchColumns.sortKey(target, SearchColumns.SEVERITY));
+        return keys;
     }
 
     public void showLogTable(TableView<ModSecurity> tableView,
@@ -299,43 +346,60 @@ public class ViewModSecController {
     }
 
     public static LocalDate parseDate(String inputDate) {
-        DateTimeFormatter INPUT_FORMATTER = DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss.SSSSSS Z");
-        ZonedDateTime zonedDateTime = ZonedDateTime.parse(inputDate, INPUT_FORMATTER);
-        return zonedDateTime.toLocalDate();
+        long epochDay = TimestampDecoder.toLocalEpochDay(inputDate, 0, inputDate.length());
+        if (epochDay == TimestampDecoder.INVALID) {
+            throw new IllegalArgumentException("Unreadable ModSecurity timestamp: " + inputDate);
+        }
+        return LocalDate.ofEpochDay(epochDay);
     }
 
 
-    public static boolean containsTextField(ModSecurity modsec, String textField, List<String> appliedFilter) {
-        boolean found = false;
-        String remoteAddr = modsec.getRemoteAddress();
-        String requestPath = modsec.getRequestPath();
-        String method = modsec.getMethod();
-        String userAgent = modsec.getUserAgent();
-        String attackName = modsec.getAttackName();
-        String attackData = modsec.getAttackData();
-        String severity = modsec.getSeverity();
+    /**
+     * The day is read through the shared DayCache, the search target is only rebuilt when the cache
+     * hands out another day, i.e. the date changed or the log file was modified.
+     */
+    private static synchronized SearchTarget targetOf(List<ModSecurity> entries) {
+        if (entries != modSecEntries) {
+            modSecEntries = entries;
+            searchTarget = SearchColumns.modSecurityTarget(entries);
+        }
+        return searchTarget;
+    }
+
+    private static String fieldOf(String filter) {
+        return switch (filter) {
+            case "Remote Address" -> SearchColumns.IP;
+            case "Path" -> SearchColumns.PATH;
+            case "Method" -> SearchColumns.METHOD;
+            case "User Agent" -> SearchColumns.USER_AGENT;
+            case "Attack Name" -> SearchColumns.ATTACK_NAME;
+            case "Attack Data" -> SearchColumns.ATTACK_DATA;
+            case "Severity" -> SearchColumns.SEVERITY;
+            default -> null;
+        };
+    }
+
+    /**
+     * Compiles the search box into a query. Without checked filters the text is read with the
+     * query syntax, otherwise it must match every checked field.
+     * @param regex: the text is a regular expression, matched on any column without checked filters
+     */
+    public static Query compileSearch(String textField, List<String> appliedFilter, boolean regex) {
+        if (regex && textField != null && !textField.isEmpty() && appliedFilter.isEmpty()) {
+            return Query.regex(null, textField);
+        }
         if (appliedFilter.isEmpty()) {
-            return remoteAddr.contains(textField) ||
-                    requestPath.contains(textField) ||
-                    method.contains(textField) ||
-                    userAgent.contains(textField) ||
-                    attackName.contains(textField) ||
-                    attackData.contains(textField) ||
-                    severity.contains(textField);
+            return Query.compile(textField);
         }
+        List<Query> clauses = new ArrayList<>();
         for (String filter : appliedFilter) {
-            found = switch (filter) {
-                case "Remote Address" -> textField != null && remoteAddr.contains(textField);
-                case "Path" -> textField != null && requestPath.contains(textField);
-                case "Method" -> textField != null && method.contains(textField);
-                case "User Agent" -> textField != null && userAgent.contains(textField);
-                case "Attack Name" -> textField != null && attackName.contains(textField);
-                case "Attack Data" -> textField != null && attackData.contains(textField);
-                case "Severity" -> textField != null && severity.contains(textField);
-                default -> found;
-            };
-            if (!found) break;
+            String field = fieldOf(filter);
+            if (field == null) {
+                continue;
+            }
+            String value = textField == null ? "" : textField;
+            clauses.add(regex && !value.isEmpty() ? Query.regex(field, value) : Query.field(field, value));
         }
-        return found;
+        return Query.allOf(clauses);
     }
 }
\ No newline at end of file
@@ -26,7 +26,15 @@ public class Config {
             CONFIG_DIR_PATH + File.separator + "accounts.json";
     private static final String CONFIG_FILE_PATH =
             CONFIG_DIR_PATH + File.separator + "config.json";
+    private static final String INDEX_DIR_PATH =
+            CONFIG_DIR_PATH + File.separator + "index";
+    private static final String ROLLUP_DIR_PATH =
+            CONFIG_DIR_PATH + File.separator + "rollup";
     private static final String IP_DB_FILENAME = "GeoLite2-Country.mmdb";
+    private static final String DAY_CACHE_BUDGET_KEY = "DAY_CACHE_BUDGET_MB";
+    private static final long DEFAULT_DAY_CACHE_BUDGET_MB = 512;
+    private static final String SEARCH_TIME_BUDGET_KEY = "SEARCH_TIME_BUDGET_SECONDS";
+    private static final long DEFAULT_SEARCH_TIME_BUDGET_SECONDS = 10;
     public static final String PROJECT_NAME = "loganalyz3r";
     public static String getConfigFilePath() {
         return CONFIG_FILE_PATH;
@@ -34,6 +42,12 @@ public class Config {
     public static String getAccountsFilePath() {
         return ACCOUNTS_FILE_PATH;
     }
+    public static String getIndexDirPath() {
+        return INDEX_DIR_PATH;
+    }
+    public static String getRollupDirPath() {
+        return ROLLUP_DIR_PATH;
+    }
     public static String getIpDbFilename() {
         return IP_DB_FILENAME;
     }
@@ -126,6 +140,28 @@ public class Config {
         return pathConfig.get("DEFAULT_MODSECURITY_LOG_LOCATION").asText();
     }
 
+    /**
+     * Memory the parsed days shared by the views may hold, DAY_CACHE_BUDGET_MB in the config file.
+     */
+    public static long getDayCacheBudgetBytes() {
+        long budgetMb = DEFAULT_DAY_CACHE_BUDGET_MB;
+        if (pathConfig != null && pathConfig.has(DAY_CACHE_BUDGET_KEY)) {
+            budgetMb = pathConfig.get(DAY_CACHE_BUDGET_KEY).asLong(DEFAULT_DAY_CACHE_BUDGET_MB);
+        }
+        return budgetMb << 20;
+    }
+
+    /**
+     * Time a search of the log views may take before it is stopped, SEARCH_TIME_BUDGET_SECONDS in the config file.
+     */
+    public static long getSearchTimeBudgetMillis() {
+        long budgetSeconds = DEFAULT_SEARCH_TIME_BUDGET_SECONDS;
+        if (pathConfig != null && pathConfig.has(SEARCH_TIME_BUDGET_KEY)) {
+            budgetSeconds = pathConfig.get(SEARCH_TIME_BUDGET_KEY).asLong(DEFAULT_SEARCH_TIME_BUDGET_SECONDS);
+        }
+        return budgetSeconds * 1000;
+    }
+
     public static void setCurrentlyLoggedOnUser(String data) {
         currentlyLoggedOnUser = data;
     }
@@ -0,0 +1,284 @@
+package loganalyzer;
+
+/**
+ * Single-pass tokenizer for Apache common/combined log lines.
+ * The line is walked once, "quoted" and [bracketed] fields are kept whole, and only the
+ * boundaries of each field are recorded, so callers materialise just the fields they need.
+ * An instance is reused from line to line and is therefore not thread-safe.
+ */
+public final class ApacheLineTokenizer {
+    public static final int IP = 0;
+    public static final int IDENT = 1;
+    public static final int USER = 2;
+    public static final int TIMESTAMP = 3;
+    public static final int REQUEST = 4;
+    public static final int STATUS = 5;
+    public static final int BYTES = 6;
+    public static final int REFERER = 7;
+    public static final int USER_AGENT = 8;
+    private static final int FIELD_COUNT = 9;
+
+    private final int[] starts = new int[FIELD_COUNT];
+    private final int[] ends = new int[FIELD_COUNT];
+    private int fieldCount;
+    private CharSequence line;
+
+    // boundaries of the request line parts, resolved lazily
+    private int methodStart;
+    private int methodEnd;
+    private int pathStart;
+    private int pathEnd;
+    private int protocolStart;
+    private int protocolEnd;
+    private boolean requestSplit;
+
+    /**
+     * Tokenizes a line.
+     * @param line: the raw log line
+     * @return true when the line holds at least the fields up to the status code
+     */
+    public boolean tokenize(CharSequence line) {
+        this.line = line;
+        this.requestSplit = false;
+        int length = line.length();
+        int i = 0;
+        int field = 0;
+        while (field < FIELD_COUNT) {
+            while (i < length && line.charAt(i) == ' ') {
+                i++;
+            }
+            if (i >= length) {
+                break;
+            }
+            char c = line.charAt(i);
+            int start;
+            int end;
+            if (c == '"') {
+                start = ++i;
+                while (i < length) {
+                    char current = line.charAt(i);
+                    if (current == '\\' && i + 1 < length) {
+                        i += 2;
+                    } else if (current == '"') {
+                        break;
+                    } else {
+                        i++;
+                    }
+                }
+                end = Math.min(i, length);
+                i++;
+            } else if (c == '[') {
+                start = ++i;
+                while (i < length && line.charAt(i) != ']') {
+                    i++;
+                }
+                end = i;
+                i++;
+            } else {
+                start = i;
+                while (i < length && line.charAt(i) != ' ') {
+                    i++;
+                }
+                end = i;
+            }
+            starts[field] = start;
+            ends[field] = end;
+            field++;
+        }
+        fieldCount = field;
+        return fieldCount > STATUS;
+    }
+
+    public boolean hasField(int field) {
+        return field < fieldCount;
+    }
+
+    public int start(int field) {
+        return starts[field];
+    }
+
+    public int end(int field) {
+        return ends[field];
+    }
+
+    public CharSequence line() {
+        return line;
+    }
+
+    public String field(int field) {
+        if (!hasField(field)) {
+            return "";
+        }
+        return line.subSequence(starts[field], ends[field]).toString();
+    }
+
+    /**
+     * Reads a numeric field without allocating, "-" (no value) is read as 0.
+     * @throws NumberFormatException when the field is not a number or does not fit an int
+     */
+    public int intField(int field) {
+        long value = longField(field);
+        if (value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Numeric field out of range: " + field(field));
+        }
+        return (int) value;
+    }
+
+    /**
+     * Same as intField for fields that may pass 2^31, e.g. the size of a response.
+     * @throws NumberFormatException when the field is not a number or does not fit a long
+     */
+    public long longField(int field) {
+        if (!hasField(field)) {
+            return 0;
+        }
+        int start = starts[field];
+        int end = ends[field];
+        if (end - start == 1 && line.charAt(start) == '-') {
+            return 0;
+        }
+        if (start == end) {
+            throw new NumberFormatException("Empty numeric field");
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = line.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Invalid numeric field: " + line.subSequence(start, end));
+            }
+            if (value > (Long.MAX_VALUE - digit) / 10) {
+                throw new NumberFormatException("Numeric field out of range: " + line.subSequence(start, end));
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * The request line is "METHOD path PROTOCOL", but the path itself may contain spaces,
+     * so the method is the first word, the protocol the last one and the path everything between.
+     */
+    private void splitRequest() {
+        if (requestSplit) {
+            return;
+        }
+        requestSplit = true;
+        int start = 0;
+        int end = 0;
+        if (hasField(REQUEST)) {
+            start = starts[REQUEST];
+            end = ends[REQUEST];
+        }
+        methodStart = start;
+        protocolEnd = end;
+        int firstSpace = -1;
+        for (int i = start; i < end; i++) {
+            if (line.charAt(i) == ' ') {
+                firstSpace = i;
+                break;
+            }
+        }
+        if (firstSpace < 0) {
+            methodEnd = end;
+            pathStart = pathEnd = protocolStart = end;
+            return;
+        }
+        methodEnd = firstSpace;
+        pathStart = firstSpace + 1;
+        int lastSpace = -1;
+        for (int i = end - 1; i > firstSpace; i--) {
+            if (line.charAt(i) == ' ') {
+                lastSpace = i;
+                break;
+            }
+        }
+        if (lastSpace > 0 && startsWithHttp(lastSpace + 1, end)) {
+            pathEnd = lastSpace;
+            protocolStart = lastSpace + 1;
+        } else {
+            pathEnd = end;
+            protocolStart = end;
+        }
+    }
+
+    private boolean startsWithHttp(int from, int end) {
+        if (end - from < 5) {
+            return false;
+        }
+        return line.charAt(from) == 'H' && line.charAt(from + 1) == 'T' && line.charAt(from + 2) == 'T'
+                && line.charAt(from + 3) == 'P' && line.charAt(from + 4) == '/';
+    }
+
+    public String method() {
+        splitRequest();
+        return line.subSequence(methodStart, methodEnd).toString();
+    }
+
+    public String requestPath() {
+        splitRequest();
+        return line.subSequence(pathStart, pathEnd).toString();
+    }
+
+    public int requestPathStart() {
+        splitRequest();
+        return pathStart;
+    }
+
+    public int requestPathEnd() {
+        splitRequest();
+        return pathEnd;
+    }
+
+    public String protocol() {
+        splitRequest();
+        return line.subSequence(protocolStart, protocolEnd).toString();
+    }
+
+    /**
+     * Looks a field up in a dictionary straight from the line, without copying it first.
+     */
+    public int fieldId(int field, StringDictionary dictionary) {
+        if (!hasField(field)) {
+            return dictionary.idOf(line, 0, 0);
+        }
+        return dictionary.idOf(line, starts[field], ends[field]);
+    }
+
+    public int methodId(StringDictionary dictionary) {
+        splitRequest();
+        return dictionary.idOf(line, methodStart, methodEnd);
+    }
+
+    public int requestPathId(StringDictionary dictionary) {
+        splitRequest();
+        return dictionary.idOf(line, pathStart, pathEnd);
+    }
+
+    public int protocolId(StringDictionary dictionary) {
+        splitRequest();
+        return dictionary.idOf(line, protocolStart, protocolEnd);
+    }
+
+    /**
+     * @return the size of the response, capped to the int the views show it as
+     */
+    public int contentLength() {
+        return (int) Math.min(Integer.MAX_VALUE, longField(BYTES));
+    }
+
+    /**
+     * Fills an Apache record from the last tokenized line.
+     */
+    public Apache toApache() {
+        return new Apache(
+                field(IP),
+                field(TIMESTAMP),
+                method(),
+                protocol(),
+                requestPath(),
+                intField(STATUS),
+                contentLength(),
+                field(USER_AGENT)
+        );
+    }
+}
@@ -1,132 +1,133 @@
 package loganalyzer;
 
-import java.io.*;
+import java.io.IOException;
 import java.nio.file.*;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Locale;
-import java.util.regex.*;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import entrypoint.Config;
 import javafx.scene.control.DatePicker;
 
-import static utility.Utility.*;
+import static utility.Utility.showAlert;
 
 public class ApacheParser {
     private ApacheParser() {
         throw new IllegalStateException("Utility class");
     }
-    private static final Pattern ipAddrPattern = Pattern.compile("((\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}\\.\\d{1,3})|([0-9a-fA-F]{1,4}(:[0-9a-fA-F]{1,4}){7}))");
-    private static final Pattern timestampPattern = Pattern.compile("\\[(\\d{2}/[A-Za-z]{3}/\\d{4}:\\d{2}:\\d{2}:\\d{2} [+\\-]\\d{4})]");
-    private static final Pattern userAgentPattern = Pattern.compile("\"([^\"]*)\"[^\"]*$");
     private static final Logger logger = Logger.getLogger(ApacheParser.class.getName());
-    public static String parseIpAddress(String logLine) {
-        return findFirstMatch(logLine, ipAddrPattern);
-    }
+    private static final ThreadLocal<ApacheLineTokenizer> tokenizer =
+            ThreadLocal.withInitial(ApacheLineTokenizer::new);
+    private static final String LAZY_KIND = "apache-lazy";
+
     public static String parseTimestamp(String logLine) {
-        String parsedLog = findFirstMatch(logLine, timestampPattern);
-        if (parsedLog != null) {
-            return parsedLog.substring(1, parsedLog.length() - 1);
-        } else {
-            return null;
-        }
-    }
-    public static String parseUserAgent(String logLine) {
-        String parsedLog = findFirstMatch(logLine, userAgentPattern);
-        if (parsedLog != null) {
-            return parsedLog.substring(1, parsedLog.length() - 1);
-        } else {
-            return null;
+        ApacheLineTokenizer lineTokenizer = tokenizer.get();
+        if (lineTokenizer.tokenize(logLine) || lineTokenizer.hasField(ApacheLineTokenizer.TIMESTAMP)) {
+            return lineTokenizer.field(ApacheLineTokenizer.TIMESTAMP);
         }
+        return null;
     }
 
-    public static String[] parseAllInOne(String logLine) {
-        return logLine.split(" ");
-    }
-
-    public static String parseMethod(String[] aioArr) {
-        String tempMethodValue = getElementSafely(aioArr, 5);
-        if (tempMethodValue != null) {
-            return tempMethodValue.replace("\"", "");
+    public static Apache parseLogLine(String line) {
+        ApacheLineTokenizer lineTokenizer = tokenizer.get();
+        try {
+            if (lineTokenizer.tokenize(line)) {
+                return lineTokenizer.toApache();
+            }
+            logger.log(Level.FINE, "Skipped truncated log line: {0}", line);
+        } catch (NumberFormatException e) {
+            logger.log(Level.FINE, "Skipped malformed log line: {0}", line);
         }
         return null;
     }
 
-    public static String parseProtocol(String[] aioArr) {
-        String tempMethodValue = getElementSafely(aioArr, 7);
-        if (tempMethodValue != null) {
-            return tempMethodValue.replace("\"", "");
+    /**
+     * @return the calendar day printed in the line's timestamp, or null if it has none
+     */
+    public static LocalDate parseDay(String line) {
+        ApacheLineTokenizer lineTokenizer = tokenizer.get();
+        if (!lineTokenizer.tokenize(line)) {
+            return null;
         }
-        return null;
+        long epochDay = localEpochDay(lineTokenizer);
+        return epochDay == TimestampDecoder.INVALID ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    private static long localEpochDay(ApacheLineTokenizer lineTokenizer) {
+        return TimestampDecoder.toLocalEpochDay(lineTokenizer.line(),
+                lineTokenizer.start(ApacheLineTokenizer.TIMESTAMP),
+                lineTokenizer.end(ApacheLineTokenizer.TIMESTAMP));
     }
 
-    public static String parseRequestPath(String[] aioArr) {
-        String tempMethodValue = getElementSafely(aioArr, 6);
-        if (tempMethodValue != null) {
-            return tempMethodValue.replace("\"", "");
+    public static Apache parseLogLineOnDate(String line, LocalDate selectedDate) {
+        ApacheLineTokenizer lineTokenizer = tokenizer.get();
+        if (!lineTokenizer.tokenize(line) || localEpochDay(lineTokenizer) != selectedDate.toEpochDay()) {
+            return null;
+        }
+        try {
+            return lineTokenizer.toApache();
+        } catch (NumberFormatException e) {
+            logger.log(Level.FINE, "Skipped malformed log line: {0}", line);
         }
         return null;
     }
 
-    public static int parseStatusCode(String[] aioArr) {
-        String tempMethodValue = getElementSafely(aioArr, 8);
-        if (tempMethodValue != null) {
-            return Integer.parseInt(tempMethodValue.replace("\"", ""));
-        }
-        return 0;
+    /**
+     * Loads the lines of the selected day as references into the log files, sorted by timestamp.
+     * The numbers a view filters and sorts on are decoded up front, and the text fields dictionary-encoded.
+     */
+    public static LazyApacheLog loadLazyApacheByDate(DatePicker datePicker) {
+        return loadLazyApacheByDate(datePicker.getValue());
     }
 
-    public static int parseContentLength(String[] aioArr) {
-        String tempMethodValue = getElementSafely(aioArr, 9);
-        if (tempMethodValue != null) {
-            return Integer.parseInt(tempMethodValue.replace("\"", ""));
-        }
-        return 0;
+    /**
+     * Same as loadLazyApacheByDate(DatePicker), safe to call from a background thread.
+     */
+    public static LazyApacheLog loadLazyApacheByDate(LocalDate selectedDate) {
+        return loadByDate(selectedDate, LAZY_KIND, segments -> loadLazy(segments, selectedDate.toEpochDay()),
+                LazyApacheLog::new);
     }
 
-    public static Apache parseLogLine(String line) {
-        try {
-            String[] aioArr = parseAllInOne(line);
-            return new Apache(
-                    parseIpAddress(line),
-                    parseTimestamp(line),
-                    parseMethod(aioArr),
-                    parseProtocol(aioArr),
-                    parseRequestPath(aioArr),
-                    parseStatusCode(aioArr),
-                    parseContentLength(aioArr),
-                    parseUserAgent(line)
-            );
-        } catch (Exception e) {
-            System.out.println(e);
-            System.out.println(line);
-        }
-        return null;
+    private static LazyApacheLog loadLazy(List<LogFileScanner.Segment> segments, long selectedEpochDay)
+            throws IOException {
+        LazyApacheLog log = LogFileScanner.scanSegments(segments, LazyApacheLog::new,
+                (partial, line, start, end) -> {
+                    ApacheLineTokenizer lineTokenizer = tokenizer.get();
+                    if (!lineTokenizer.tokenize(line) || localEpochDay(lineTokenizer) != selectedEpochDay) {
+                        return;
+                    }
+                    try {
+                        partial.append(lineTokenizer, line, start, end);
+                    } catch (NumberFormatException e) {
+                        logger.log(Level.FINE, "Skipped malformed log line: {0}", line);
+                    }
+                },
+                LazyApacheLog::appendAll);
+        log.mapSources();
+        log.sortByTime();
+        return log;
     }
 
-    public static List<Apache> parseApacheByDate(DatePicker datePicker) {
+    /**
+     * Reads the selected day through the DayCache, so views asking for the same day share one load.
+     * @param kind: DayCache kind of what the loader builds
+     * @param empty: what to return when the log file does not exist
+     */
+    private static <A extends ApacheRows> A loadByDate(LocalDate selectedDate, String kind,
+                                                       DayLoader<A> loader, Supplier<A> empty) {
         String logFilePath = Config.getApacheLogLocation();
         Path logPath = Paths.get(logFilePath);
-        List<Apache> logList = new LinkedList<>();
-        LocalDate selectedDate = datePicker.getValue();
-        System.out.println(selectedDate);
-
-        if (Files.exists(logPath)) {
-            try (BufferedReader br = new BufferedReader(new FileReader(logFilePath))) {
-                String line;
-                while ((line = br.readLine()) != null) {
-                    String timestamp = parseTimestamp(line);
-                    DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.ENGLISH);
-                    LocalDate logDate = LocalDate.parse(timestamp, formatter);
+        logger.log(Level.FINE, "Parsing Apache log for {0}", selectedDate);
 
-                    if (logDate.equals(selectedDate)) {
-                        logList.add(parseLogLine(line));
-                    }
-                }
+        List<Path> logFiles = RotatedLogFiles.discover(logPath);
+        if (!logFiles.isEmpty()) {
+            try {
+                List<LogFileScanner.Segment> segments =
+                        RotatedLogFiles.segmentsFor(logFiles, selectedDate, ApacheParser::parseDay);
+                return DayCache.get(kind, logPath, selectedDate, segments,
+                        () -> loader.load(segments), ApacheRows::estimatedBytes);
             } catch (IOException e) {
                 logger.log(Level.WARNING, "Failed to perform IO activities on log file.");
                 throw new RuntimeException(e);
@@ -137,6 +138,11 @@ public class ApacheParser {
             logger.log(Level.WARNING, errMsg);
             showAlert("ERROR", errMsg);
         }
-        return logList;
+        return empty.get();
+    }
+
+    @FunctionalInterface
+    private interface DayLoader<A> {
+        A load(List<LogFileScanner.Segment> segments) throws IOException;
     }
 }
@@ -0,0 +1,33 @@
+package loganalyzer;
+
+/**
+ * Rows of a loaded Apache log day, such as LazyApacheLog which decodes them on display.
+ * Days returned by the ApacheParser loaders are sorted by timestamp.
+ */
+public interface ApacheRows {
+    int size();
+
+    /**
+     * @return the time of the row in epoch milliseconds
+     */
+    long timestamp(int row);
+
+    int statusCode(int row);
+
+    int contentLength(int row);
+
+    /**
+     * Binary search over a day sorted by timestamp.
+     * @return the first row at or after millis, size() when there is none
+     */
+    default int firstRowAtOrAfter(long millis) {
+        return TimeOrder.firstAtOrAfter(this::timestamp, size(), millis);
+    }
+
+    Apache get(int row);
+
+    /**
+     * Rough heap footprint, used to budget caches.
+     */
+    long estimatedBytes();
+}
@@ -0,0 +1,134 @@
+package loganalyzer;
+
+import entrypoint.Config;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Application-wide cache of the days loaded from the log files, shared by every view.
+ * An entry is keyed by the kind of data, the configured log path and the day, and remembers the
+ * segments it was read from: the file, the byte range of the day given by its DayOffsetIndex and
+ * the checksum of the file head. Lines appended for later days leave past days cached, while new
+ * lines of the day, a rotation moving the day to another file or a truncation reload the entry. Entries are evicted least recently
+ * used first once their estimated footprint exceeds the budget set in the config file.
+ */
+public final class DayCache {
+    private DayCache() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    @FunctionalInterface
+    public interface Loader<T> {
+        T load() throws IOException;
+    }
+
+    private static final Logger logger = Logger.getLogger(DayCache.class.getName());
+    private static final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private static long usedBytes;
+
+    private record Key(String kind, Path logPath, LocalDate day) {
+    }
+
+    /**
+     * @param identity: checksum of the head of a plain file up to the end of the range, modification
+     * time of a compressed one
+     */
+    private record SegmentStamp(Path path, long from, long to, long identity) {
+    }
+
+    private record Entry(List<SegmentStamp> stamps, Object value, long bytes) {
+    }
+
+    /**
+     * Returns the cached day when the files it was read from did not change, loads and caches it otherwise.
+     * @param kind: what the loader builds, days of different kinds are cached side by side
+     * @param logPath: the configured log file
+     * @param segments: where the day currently is, as found by RotatedLogFiles.segmentsFor
+     * @param sizer: estimated heap footprint of a loaded day
+     */
+    public static <T> T get(String kind, Path logPath, LocalDate day, List<LogFileScanner.Segment> segments,
+                            Loader<T> loader, ToLongFunction<T> sizer) throws IOException {
+        Key key = new Key(kind, logPath.toAbsolutePath().normalize(), day);
+        List<SegmentStamp> stamps = stampsOf(segments);
+        T cached = lookup(key, stamps);
+        if (cached != null) {
+            return cached;
+        }
+        T loaded = loader.load();
+        store(key, new Entry(stamps, loaded, sizer.applyAsLong(loaded)));
+        return loaded;
+    }
+
+    /**
+     * Drops every cached day, e.g. after the log locations were changed.
+     */
+    public static synchronized void clear() {
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static synchronized <T> T lookup(Key key, List<SegmentStamp> stamps) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (!entry.stamps().equals(stamps)) {
+            logger.log(Level.FINE, "Log files of {0} changed, reloading it", key);
+            entries.remove(key);
+            usedBytes -= entry.bytes();
+            return null;
+        }
+        return (T) entry.value();
+    }
+
+    private static synchronized void store(Key key, Entry entry) {
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            usedBytes -= previous.bytes();
+        }
+        usedBytes += entry.bytes();
+        long budget = Config.getDayCacheBudgetBytes();
+        Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+        // the day just loaded stays even when it alone is over budget, the views are using it
+        while (usedBytes > budget && eldest.hasNext()) {
+            Map.Entry<Key, Entry> evicted = eldest.next();
+            if (evicted.getKey().equals(key)) {
+                break;
+            }
+            usedBytes -= evicted.getValue().bytes();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * The segments a day is read from. A day in no file yet has no stamp, so it reloads once its first lines show up.
+     */
+    private static List<SegmentStamp> stampsOf(List<LogFileScanner.Segment> segments) throws IOException {
+        List<SegmentStamp> stamps = new ArrayList<>();
+        for (LogFileScanner.Segment segment : segments) {
+            Path path = segment.getPath().toAbsolutePath().normalize();
+            if (segment.isCompressed()) {
+                // rotated archives are not written to, unless replaced
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                stamps.add(new SegmentStamp(path, 0, attributes.size(), attributes.lastModifiedTime().toMillis()));
+            } else {
+                stamps.add(new SegmentStamp(path, segment.getFrom(), segment.getTo(),
+                        DayOffsetIndex.headChecksumOf(path, segment.getTo())));
+            }
+        }
+        return stamps;
+    }
+}
@@ -0,0 +1,210 @@
+package loganalyzer;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import entrypoint.Config;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Sidecar index mapping every calendar day of a log file to the byte range holding its lines.
+ * The index is persisted in the config directory, extended with the bytes appended since the
+ * last lookup, and rebuilt from scratch when the log was truncated or rotated underneath it.
+ * A day range spans from the first to the last line of that day, so lines of neighbouring days
+ * written out of order may still fall inside it and callers must keep filtering by date.
+ */
+public final class DayOffsetIndex {
+    @FunctionalInterface
+    public interface DayReader {
+        /**
+         * @return the calendar day of the line, or null when the line has no readable timestamp
+         */
+        LocalDate dayOf(String line);
+    }
+
+    private static final Logger logger = Logger.getLogger(DayOffsetIndex.class.getName());
+    private static final int HEAD_FINGERPRINT_SIZE = 4096;
+    private static final Map<Path, DayOffsetIndex> loadedIndexes = new ConcurrentHashMap<>();
+
+    private final Path logPath;
+    private final Path indexPath;
+    private final DayReader dayReader;
+    private TreeMap<LocalDate, long[]> days = new TreeMap<>();
+    private long indexedLength;
+    private int headLength;
+    private long headChecksum;
+
+    private DayOffsetIndex(Path logPath, DayReader dayReader) {
+        this.logPath = logPath;
+        this.dayReader = dayReader;
+        String indexName = logPath.getFileName() + "-"
+                + Integer.toHexString(logPath.toString().hashCode()) + ".idx.json";
+        this.indexPath = Paths.get(Config.getIndexDirPath(), indexName);
+    }
+
+    /**
+     * Returns the up-to-date index of a log file, loading it from disk on first use.
+     */
+    public static DayOffsetIndex forFile(Path logPath, DayReader dayReader) throws IOException {
+        Path absolutePath = logPath.toAbsolutePath().normalize();
+        DayOffsetIndex index = loadedIndexes.computeIfAbsent(absolutePath, path -> {
+            DayOffsetIndex created = new DayOffsetIndex(path, dayReader);
+            created.load();
+            return created;
+        });
+        index.refresh();
+        return index;
+    }
+
+    /**
+     * @return {start, end} byte offsets of the given day, or null when the file holds no line of that day
+     */
+    public synchronized long[] rangeOf(LocalDate day) {
+        long[] range = days.get(day);
+        return range == null ? null : range.clone();
+    }
+
+    public synchronized LocalDate firstDay() {
+        return days.isEmpty() ? null : days.firstKey();
+    }
+
+    public synchronized LocalDate lastDay() {
+        return days.isEmpty() ? null : days.lastKey();
+    }
+
+    private synchronized void refresh() throws IOException {
+        long size = Files.size(logPath);
+        boolean rotated = size < indexedLength || headChecksum != checksumHead(headLength);
+        if (rotated) {
+            logger.log(Level.INFO, "Log file {0} was truncated or rotated, rebuilding its day index.", logPath);
+            days = new TreeMap<>();
+            indexedLength = 0;
+        }
+        long completeEnd = LogFileScanner.lastCompleteLineEnd(logPath, indexedLength, size);
+        if (completeEnd <= indexedLength) {
+            return;
+        }
+        TreeMap<LocalDate, long[]> appended = LogFileScanner.scan(logPath, indexedLength, completeEnd,
+                TreeMap::new,
+                (partial, line, start, end) -> {
+                    LocalDate day = dayReader.dayOf(line);
+                    if (day != null) {
+                        extend(partial, day, start, end);
+                    }
+                },
+                (left, right) -> {
+                    right.forEach((day, range) -> extend(left, day, range[0], range[1]));
+                    return left;
+                });
+        appended.forEach((day, range) -> extend(days, day, range[0], range[1]));
+        indexedLength = completeEnd;
+        headLength = (int) Math.min(HEAD_FINGERPRINT_SIZE, indexedLength);
+        headChecksum = checksumHead(headLength);
+        save();
+    }
+
+    private static void extend(TreeMap<LocalDate, long[]> target, LocalDate day, long start, long end) {
+        long[] range = target.get(day);
+        if (range == null) {
+            target.put(day, new long[]{start, end});
+        } else {
+            range[0] = Math.min(range[0], start);
+            range[1] = Math.max(range[1], end);
+        }
+    }
+
+    private long checksumHead(int length) throws IOException {
+        return checksumHead(logPath, length);
+    }
+
+    /**
+     * Checksum of the first bytes of a file, at most as many as the index fingerprints. The bytes
+     * up to the end of a day range fingerprint it against truncation and replacement, and do not
+     * change when lines are appended after it.
+     * @param upTo: end of the bytes of interest, e.g. of a day range
+     */
+    static long headChecksumOf(Path logPath, long upTo) throws IOException {
+        return checksumHead(logPath, (int) Math.min(HEAD_FINGERPRINT_SIZE, upTo));
+    }
+
+    private static long checksumHead(Path logPath, int length) throws IOException {
+        CRC32 crc = new CRC32();
+        if (length > 0) {
+            try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.READ)) {
+                ByteBuffer head = ByteBuffer.allocate(length);
+                while (head.hasRemaining() && channel.read(head, head.position()) > 0) {
+                    // keep reading until the head is complete or the file ends
+                }
+                head.flip();
+                crc.update(head);
+            }
+        }
+        return crc.getValue();
+    }
+
+    private void load() {
+        if (!Files.exists(indexPath)) {
+            return;
+        }
+        try {
+            JsonNode root = new ObjectMapper().readTree(indexPath.toFile());
+            if (!logPath.toString().equals(root.path("logPath").asText())) {
+                return;
+            }
+            TreeMap<LocalDate, long[]> loadedDays = new TreeMap<>();
+            Iterator<Map.Entry<String, JsonNode>> fields = root.path("days").fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> entry = fields.next();
+                loadedDays.put(LocalDate.parse(entry.getKey()),
+                        new long[]{entry.getValue().get(0).asLong(), entry.getValue().get(1).asLong()});
+            }
+            days = loadedDays;
+            indexedLength = root.path("indexedLength").asLong();
+            headLength = root.path("headLength").asInt();
+            headChecksum = root.path("headChecksum").asLong();
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "Day index " + indexPath + " is unreadable, it will be rebuilt.", e);
+            days = new TreeMap<>();
+            indexedLength = 0;
+            headLength = 0;
+            headChecksum = 0;
+        }
+    }
+
+    private void save() {
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode root = mapper.createObjectNode();
+        root.put("logPath", logPath.toString());
+        root.put("indexedLength", indexedLength);
+        root.put("headLength", headLength);
+        root.put("headChecksum", headChecksum);
+        ObjectNode dayNode = root.putObject("days");
+        days.forEach((day, range) -> {
+            ArrayNode rangeNode = dayNode.putArray(day.toString());
+            rangeNode.add(range[0]);
+            rangeNode.add(range[1]);
+        });
+        try {
+            Files.createDirectories(indexPath.getParent());
+            mapper.writeValue(indexPath.toFile(), root);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to save day index " + indexPath + ", it will be rebuilt next run.", e);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package loganalyzer;
+
+import java.lang.ref.SoftReference;
+
+public final class LazyApache extends Apache {
+    private static final Apache UNREADABLE = new Apache("", "", "", "", "", 0, 0, "");
+
+    private final LazyApacheLog log;
+    private final int row;
+    private SoftReference<Apache> decoded = new SoftReference<>(null);
+
+    /**
+     * Apache record backed by a row of a LazyApacheLog
+     * Only the status code, timestamp and content length are known up front, the other fields are
+     * parsed from the log line the first time one of them is read, and may be dropped again under memory pressure.
+     * @param row: the row of the log
+     */
+    LazyApache(LazyApacheLog log, int row) {
+        super(null, null, null, null, null, log.statusCode(row), 0, null);
+        this.log = log;
+        this.row = row;
+    }
+
+    private Apache decoded() {
+        Apache apache = decoded.get();
+        if (apache == null) {
+            try {
+                apache = log.decode(row);
+            } catch (StaleLogException e) {
+                // the log calls back to reload the day, not cached so the reloaded rows are read again
+                return UNREADABLE;
+            }
+            if (apache == null) {
+                apache = UNREADABLE;
+            }
+            decoded = new SoftReference<>(apache);
+        }
+        return apache;
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    @Override
+    public long getEpochMillis() {
+        return log.timestamp(row);
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        return decoded().getRemoteAddress();
+    }
+
+    @Override
+    public String getTimestamp() {
+        return decoded().getTimestamp();
+    }
+
+    @Override
+    public String getMethod() {
+        return decoded().getMethod();
+    }
+
+    @Override
+    public String getProtocol() {
+        return decoded().getProtocol();
+    }
+
+    @Override
+    public String getRequestPath() {
+        return decoded().getRequestPath();
+    }
+
+    @Override
+    public int getContentLength() {
+        return log.contentLength(row);
+    }
+
+    @Override
+    public String getUserAgent() {
+        return decoded().getUserAgent();
+    }
+}
@@ -0,0 +1,424 @@
+package loganalyzer;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Apache log lines kept as references into the log file instead of parsed records.
+ * A row only holds where its line is (source, offset, length) and the fields filters and sorts
+ * need most, the timestamp and its zone offset, the status code and the content length, and the
+ * dictionary ids of its text fields searches look at; the row is decoded from the memory-mapped file
+ * when a LazyApache row is displayed. Lines of gzip-compressed files cannot be addressed in the
+ * file, so their raw bytes are kept in memory instead.
+ * The identity and head of the files are recorded once loaded, and the size of the mapped file
+ * checked before every read: a file truncated or replaced afterwards is not read from, its lines throw
+ * StaleLogException and the day must be reloaded.
+ * Not thread-safe; parallel loads build one log per chunk and combine them with appendAll().
+ */
+public final class LazyApacheLog implements ApacheRows {
+    /**
+     * Text fields kept dictionary-encoded, see dictionary and textIds.
+     */
+    public static final int IP = 0;
+    public static final int METHOD = 1;
+    public static final int PROTOCOL = 2;
+    public static final int PATH = 3;
+    public static final int USER_AGENT = 4;
+    public static final int TIMESTAMP = 5;
+    public static final int TEXT_FIELDS = 6;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final List<LineSource> sources = new ArrayList<>();
+    private int[] sourceIds = new int[INITIAL_CAPACITY];
+    private long[] offsets = new long[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private short[] offsetMinutes = new short[INITIAL_CAPACITY];
+    private short[] statusCodes = new short[INITIAL_CAPACITY];
+    private int[] contentLengths = new int[INITIAL_CAPACITY];
+    private final StringDictionary[] dictionaries = new StringDictionary[TEXT_FIELDS];
+    private int[][] textIds = new int[TEXT_FIELDS][INITIAL_CAPACITY];
+    private int size;
+    private final AtomicBoolean staleReported = new AtomicBoolean();
+    private volatile Runnable onStale;
+
+    public LazyApacheLog() {
+        for (int field = 0; field < TEXT_FIELDS; field++) {
+            dictionaries[field] = new StringDictionary();
+        }
+    }
+
+    /**
+     * @param segment: the segment the appended lines come from, null for an empty log
+     */
+    public LazyApacheLog(LogFileScanner.Segment segment) {
+        this();
+        if (segment != null) {
+            sources.add(segment.isCompressed() ? new HeapLines() : new MappedLines(segment.getPath()));
+        }
+    }
+
+    /**
+     * Appends the line last tokenized by the tokenizer.
+     * @param start: offset of the line in its segment
+     * @param end: offset just past the line terminator
+     * @throws NumberFormatException when the status code or content length is not a number
+     */
+    public void append(ApacheLineTokenizer tokenizer, String line, long start, long end) {
+        int status = tokenizer.intField(ApacheLineTokenizer.STATUS);
+        int contentLength = tokenizer.contentLength();
+        LineSource source = sources.get(0);
+        ensureCapacity(size + 1);
+        CharSequence text = tokenizer.line();
+        int timestampStart = tokenizer.start(ApacheLineTokenizer.TIMESTAMP);
+        int timestampEnd = tokenizer.end(ApacheLineTokenizer.TIMESTAMP);
+        timestamps[size] = TimestampDecoder.toEpochMillis(text, timestampStart, timestampEnd);
+        offsetMinutes[size] = (short) TimestampDecoder.toOffsetMinutes(text, timestampStart, timestampEnd);
+        statusCodes[size] = (short) status;
+        contentLengths[size] = contentLength;
+        textIds[IP][size] = tokenizer.fieldId(ApacheLineTokenizer.IP, dictionaries[IP]);
+        textIds[METHOD][size] = tokenizer.methodId(dictionaries[METHOD]);
+        textIds[PROTOCOL][size] = tokenizer.protocolId(dictionaries[PROTOCOL]);
+        textIds[PATH][size] = tokenizer.requestPathId(dictionaries[PATH]);
+        textIds[USER_AGENT][size] = tokenizer.fieldId(ApacheLineTokenizer.USER_AGENT, dictionaries[USER_AGENT]);
+        textIds[TIMESTAMP][size] = tokenizer.fieldId(ApacheLineTokenizer.TIMESTAMP, dictionaries[TIMESTAMP]);
+        sourceIds[size] = 0;
+        if (source instanceof MappedLines mapped) {
+            mapped.include(start, end);
+            offsets[size] = start;
+            lengths[size] = (int) (end - start);
+        } else {
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            offsets[size] = ((HeapLines) source).add(bytes);
+            lengths[size] = bytes.length;
+        }
+        size++;
+    }
+
+    /**
+     * Appends every row of another log after the rows of this one, re-mapping its dictionary ids.
+     * @return this log
+     */
+    public LazyApacheLog appendAll(LazyApacheLog other) {
+        int sourceShift = sources.size();
+        sources.addAll(other.sources);
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.offsets, 0, offsets, size, other.size);
+        System.arraycopy(other.lengths, 0, lengths, size, other.size);
+        System.arraycopy(other.timestamps, 0, timestamps, size, other.size);
+        System.arraycopy(other.offsetMinutes, 0, offsetMinutes, size, other.size);
+        System.arraycopy(other.statusCodes, 0, statusCodes, size, other.size);
+        System.arraycopy(other.contentLengths, 0, contentLengths, size, other.size);
+        for (int i = 0; i < other.size; i++) {
+            sourceIds[size + i] = other.sourceIds[i] + sourceShift;
+        }
+        for (int field = 0; field < TEXT_FIELDS; field++) {
+            int[] mapping = dictionaries[field].merge(other.dictionaries[field]);
+            int[] ids = textIds[field];
+            int[] otherIds = other.textIds[field];
+            for (int i = 0; i < other.size; i++) {
+                ids[size + i] = mapping[otherIds[i]];
+            }
+        }
+        size += other.size;
+        return this;
+    }
+
+    /**
+     * Records the identity of the files and maps the file ranges holding the rows. Called once
+     * loading is over, so the rows keep pointing at the loaded file even if logrotate renames it afterwards.
+     */
+    void mapSources() throws IOException {
+        for (LineSource source : sources) {
+            if (source instanceof MappedLines mapped) {
+                mapped.map();
+            }
+        }
+    }
+
+    /**
+     * @return whether a file of the rows was truncated or replaced since the day was loaded
+     */
+    public boolean isStale() {
+        for (LineSource source : sources) {
+            if (source instanceof MappedLines mapped && !mapped.isIntact()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param onStale: run once, on the thread reading a row, when a row turns out to be stale
+     */
+    public void setOnStale(Runnable onStale) {
+        this.onStale = onStale;
+    }
+
+    /**
+     * Reorders the rows by timestamp, lines of the same time keeping their file order.
+     */
+    public void sortByTime() {
+        int[] order = TimeOrder.sortedOrder(timestamps, size);
+        if (order == null) {
+            return;
+        }
+        sourceIds = TimeOrder.permute(sourceIds, order);
+        offsets = TimeOrder.permute(offsets, order);
+        lengths = TimeOrder.permute(lengths, order);
+        timestamps = TimeOrder.permute(timestamps, order);
+        offsetMinutes = TimeOrder.permute(offsetMinutes, order);
+        statusCodes = TimeOrder.permute(statusCodes, order);
+        contentLengths = TimeOrder.permute(contentLengths, order);
+        for (int field = 0; field < TEXT_FIELDS; field++) {
+            textIds[field] = TimeOrder.permute(textIds[field], order);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= timestamps.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, timestamps.length + (timestamps.length >> 1));
+        sourceIds = Arrays.copyOf(sourceIds, newCapacity);
+        offsets = Arrays.copyOf(offsets, newCapacity);
+        lengths = Arrays.copyOf(lengths, newCapacity);
+        timestamps = Arrays.copyOf(timestamps, newCapacity);
+        offsetMinutes = Arrays.copyOf(offsetMinutes, newCapacity);
+        statusCodes = Arrays.copyOf(statusCodes, newCapacity);
+        contentLengths = Arrays.copyOf(contentLengths, newCapacity);
+        for (int field = 0; field < TEXT_FIELDS; field++) {
+            textIds[field] = Arrays.copyOf(textIds[field], newCapacity);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long timestamp(int row) {
+        return timestamps[row];
+    }
+
+    /**
+     * @return the zone offset printed in the timestamp of the row, in minutes
+     */
+    public int offsetMinutes(int row) {
+        return offsetMinutes[row];
+    }
+
+    public int statusCode(int row) {
+        return statusCodes[row];
+    }
+
+    public int contentLength(int row) {
+        return contentLengths[row];
+    }
+
+    /**
+     * @param field: a text field, IP to TIMESTAMP
+     */
+    public StringDictionary dictionary(int field) {
+        return dictionaries[field];
+    }
+
+    /**
+     * @param field: a text field, IP to TIMESTAMP
+     * @return the dictionary id of the field per row, the first size() entries are rows; shared, must not be modified
+     */
+    public int[] textIds(int field) {
+        return textIds[field];
+    }
+
+    /**
+     * @return the raw log line of the row, without its line terminator
+     * @throws StaleLogException when its file was truncated or replaced since the day was loaded
+     */
+    public String line(int row) {
+        try {
+            return sources.get(sourceIds[row]).line(offsets[row], lengths[row]);
+        } catch (StaleLogException e) {
+            Runnable callback = onStale;
+            if (callback != null && staleReported.compareAndSet(false, true)) {
+                callback.run();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Parses the whole row, or returns null when its line can no longer be parsed.
+     */
+    public Apache decode(int row) {
+        return ApacheParser.parseLogLine(line(row));
+    }
+
+    /**
+     * @return a record of the row whose fields are decoded on first access
+     */
+    public LazyApache get(int row) {
+        return new LazyApache(this, row);
+    }
+
+    /**
+     * Rough heap footprint, the mapped file ranges are not counted.
+     */
+    public long estimatedBytes() {
+        long bytes = (long) timestamps.length * (4 + 8 + 4 + 8 + 2 + 2 + 4 + 4 * TEXT_FIELDS);
+        for (StringDictionary dictionary : dictionaries) {
+            bytes += dictionary.estimatedBytes();
+        }
+        for (LineSource source : sources) {
+            bytes += source.estimatedBytes();
+        }
+        return bytes;
+    }
+
+    private abstract static class LineSource {
+        abstract String line(long offset, int length);
+
+        abstract long estimatedBytes();
+
+        static String decode(byte[] bytes, int offset, int length) {
+            while (length > 0 && (bytes[offset + length - 1] == '\n' || bytes[offset + length - 1] == '\r')) {
+                length--;
+            }
+            return new String(bytes, offset, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * The range of a log file covered by the rows of one chunk.
+     * The file is checked by path rather than through an open channel, since interrupting a
+     * cancelled search would close the channel.
+     */
+    private static final class MappedLines extends LineSource {
+        private final Path path;
+        private long from = Long.MAX_VALUE;
+        private long to = Long.MIN_VALUE;
+        private Object fileKey;
+        private long headChecksum;
+        private boolean stale;
+        private MappedByteBuffer buffer;
+
+        MappedLines(Path path) {
+            this.path = path;
+        }
+
+        void include(long start, long end) {
+            from = Math.min(from, start);
+            to = Math.max(to, end);
+        }
+
+        /**
+         * Records the identity and head of the file and maps the range.
+         */
+        synchronized void map() throws IOException {
+            if (buffer != null || from >= to) {
+                return;
+            }
+            headChecksum = DayOffsetIndex.headChecksumOf(path, to);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+            }
+        }
+
+        /**
+         * @return whether the file still holds the range: the mapped file was not truncated, or the
+         * file at the path still has the head it had when loaded when nothing is mapped
+         */
+        synchronized boolean isIntact() {
+            if (stale || from >= to) {
+                return !stale;
+            }
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                if (buffer == null) {
+                    stale = attributes.size() < to || DayOffsetIndex.headChecksumOf(path, to) != headChecksum;
+                } else if (fileKey == null || Objects.equals(fileKey, attributes.fileKey())) {
+                    stale = attributes.size() < to;
+                }
+                // a mapped file renamed away by logrotate is left whole, its mapping stays readable
+            } catch (IOException e) {
+                // the mapped file was moved or deleted, which does not truncate it either
+                stale = buffer == null;
+            }
+            return !stale;
+        }
+
+        @Override
+        synchronized String line(long offset, int length) {
+            if (buffer == null && isIntact()) {
+                // the head was checked, so a log renamed since is not mapped in place of the loaded file
+                try {
+                    map();
+                } catch (IOException e) {
+                    stale = true;
+                }
+            }
+            // reading a mapped range past the end of a truncated file would crash the JVM
+            if (!isIntact()) {
+                throw new StaleLogException("Log file " + path + " was truncated or replaced since it was loaded");
+            }
+            byte[] bytes = new byte[length];
+            buffer.get((int) (offset - from), bytes, 0, length);
+            return decode(bytes, 0, length);
+        }
+
+        @Override
+        long estimatedBytes() {
+            return 64;
+        }
+    }
+
+    /**
+     * Raw lines of a compressed file, packed one after the other in chunks, so days past 2 GB fit.
+     * An offset holds the chunk in its upper half and the position in the chunk in its lower half.
+     */
+    private static final class HeapLines extends LineSource {
+        private static final int CHUNK_SIZE = 1 << 20;
+
+        private final List<byte[]> chunks = new ArrayList<>();
+        private int used;
+
+        long add(byte[] line) {
+            byte[] chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+            if (chunk == null || used + line.length > chunk.length) {
+                // a line longer than a chunk gets a chunk of its own
+                chunk = new byte[Math.max(CHUNK_SIZE, line.length)];
+                chunks.add(chunk);
+                used = 0;
+            }
+            System.arraycopy(line, 0, chunk, used, line.length);
+            long offset = (long) (chunks.size() - 1) << 32 | used;
+            used += line.length;
+            return offset;
+        }
+
+        @Override
+        String line(long offset, int length) {
+            return decode(chunks.get((int) (offset >>> 32)), (int) offset, length);
+        }
+
+        @Override
+        long estimatedBytes() {
+            long bytes = 0;
+            for (byte[] chunk : chunks) {
+                bytes += chunk.length;
+            }
+            return bytes;
+        }
+    }
+}
@@ -18,6 +18,7 @@ public class Log {
                String requestPath, int statusCode, String userAgent) {
         this.remoteAddress = remoteAddress;
         this.timestamp = timestamp;
+        this.epochMillis = TimestampDecoder.toEpochMillis(timestamp);
         this.method = method;
         this.protocol = protocol;
         this.requestPath = requestPath;
@@ -33,6 +34,13 @@ public class Log {
         return timestamp;
     }
 
+    /**
+     * @return the timestamp decoded once at parse time, TimestampDecoder.INVALID if it was unreadable
+     */
+    public long getEpochMillis() {
+        return epochMillis;
+    }
+
     public String getMethod() {
         return method;
     }
@@ -60,6 +68,7 @@ public class Log {
     @CsvBindByName(column = "timestamp", required = true)
     @CsvBindByPosition(position = 1)
     private final String timestamp;
+    private final long epochMillis;
     @CsvBindByName(column = "method", required = true)
     @CsvBindByPosition(position = 2)
     private final String method;
@@ -0,0 +1,411 @@
+package loganalyzer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BinaryOperator;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Parallel line scanner for large log files.
+ * The requested byte range is cut into chunks whose boundaries are moved to the next newline,
+ * every chunk is memory-mapped and parsed on a fork/join pool, and the per-chunk results are
+ * combined left to right so the final result keeps the file order.
+ * Several files (e.g. the rotated siblings of a log) can be scanned at once, gzip-compressed
+ * ones are decompressed as a stream, one file per task since they cannot be split.
+ * Interrupting the thread waiting for a scan stops it between chunks with a CancellationException.
+ */
+public final class LogFileScanner {
+    private LogFileScanner() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    @FunctionalInterface
+    public interface LineParser<T> {
+        /**
+         * @return the parsed object, or null when the line should be skipped
+         */
+        T parse(String line) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface LineHandler<A> {
+        /**
+         * @param start: file offset of the first byte of the line
+         * @param end: file offset just past the line terminator
+         */
+        void handle(A accumulator, String line, long start, long end) throws IOException;
+    }
+
+    /**
+     * A byte range of one log file, or a whole gzip-compressed file.
+     */
+    public static final class Segment {
+        private final Path path;
+        private final long from;
+        private final long to;
+        private final boolean compressed;
+
+        private Segment(Path path, long from, long to, boolean compressed) {
+            this.path = path;
+            this.from = from;
+            this.to = to;
+            this.compressed = compressed;
+        }
+
+        /**
+         * @param from: first byte of the range, it must be the start of a line
+         * @param to: end of the range, clamped to the current file size
+         */
+        public static Segment of(Path path, long from, long to) {
+            return new Segment(path, from, to, false);
+        }
+
+        public static Segment compressed(Path path) {
+            return new Segment(path, 0, Long.MAX_VALUE, true);
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public boolean isCompressed() {
+            return compressed;
+        }
+
+        public long getFrom() {
+            return from;
+        }
+
+        /**
+         * @return the end of the range, Long.MAX_VALUE for a compressed file
+         */
+        public long getTo() {
+            return to;
+        }
+    }
+
+    private static final long MIN_CHUNK_SIZE = 1L << 20;
+    private static final long MAX_CHUNK_SIZE = 64L << 20;
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Parses every line of a file in parallel and returns the non-null results in file order.
+     */
+    public static <T> List<T> parseLines(Path path, LineParser<T> parser) throws IOException {
+        return parseLines(path, 0, Long.MAX_VALUE, parser);
+    }
+
+    /**
+     * Parses the lines that start inside [from, to) in parallel and returns the non-null results in file order.
+     */
+    public static <T> List<T> parseLines(Path path, long from, long to, LineParser<T> parser) throws IOException {
+        return scan(path, from, to, ArrayList::new, (list, line, start, end) -> {
+            T parsed = parser.parse(line);
+            if (parsed != null) {
+                list.add(parsed);
+            }
+        }, (left, right) -> {
+            left.addAll(right);
+            return left;
+        });
+    }
+
+    /**
+     * Feeds the lines of [from, to) into one accumulator per chunk and combines the accumulators in file order.
+     * @param from: first byte of the range, it must be the start of a line
+     * @param to: end of the range, clamped to the current file size
+     */
+    public static <A> A scan(Path path, long from, long to, Supplier<A> supplier,
+                             LineHandler<A> handler, BinaryOperator<A> combiner) throws IOException {
+        return scan(List.of(Segment.of(path, from, to)), supplier, handler, combiner);
+    }
+
+    /**
+     * Scans several segments in parallel and combines their accumulators in list order.
+     * For a compressed segment, start and end are offsets in the decompressed stream.
+     */
+    public static <A> A scan(List<Segment> segments, Supplier<A> supplier,
+                             LineHandler<A> handler, BinaryOperator<A> combiner) throws IOException {
+        return scanSegments(segments, segment -> supplier.get(), handler, combiner);
+    }
+
+    /**
+     * Same as scan(), but every accumulator is created knowing the segment its lines come from.
+     * @param supplier: creates an accumulator for a segment, called with null when there is no segment
+     * @throws CancellationException when the calling thread is interrupted during the scan
+     */
+    public static <A> A scanSegments(List<Segment> segments, Function<Segment, A> supplier,
+                                     LineHandler<A> handler, BinaryOperator<A> combiner) throws IOException {
+        if (segments.isEmpty()) {
+            return supplier.apply(null);
+        }
+        // the workers are not interrupted with the caller, they poll this flag between chunks instead
+        AtomicBoolean cancelled = new AtomicBoolean();
+        ForkJoinTask<A> scan = pool.submit(new SegmentTask<>(segments, 0, segments.size(), supplier, handler,
+                combiner, cancelled::get));
+        try {
+            return scan.get();
+        } catch (InterruptedException e) {
+            cancelled.set(true);
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Scan cancelled");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static void checkCancelled(BooleanSupplier cancelled) {
+        if (cancelled.getAsBoolean()) {
+            throw new CancellationException("Scan cancelled");
+        }
+    }
+
+    private static <A> A scanSegment(Segment segment, Function<Segment, A> supplier, LineHandler<A> handler,
+                                     BinaryOperator<A> combiner, BooleanSupplier cancelled) throws IOException {
+        if (segment.compressed) {
+            return scanCompressed(segment.path, supplier.apply(segment), handler, cancelled);
+        }
+        try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.READ)) {
+            long end = Math.min(segment.to, channel.size());
+            if (segment.from >= end) {
+                return supplier.apply(segment);
+            }
+            long[] boundaries = splitAtNewlines(channel, segment.from, end);
+            return new ChunkTask<>(channel, boundaries, 0, boundaries.length - 1,
+                    () -> supplier.apply(segment), handler, combiner, cancelled).invoke();
+        }
+    }
+
+    private static <A> A scanCompressed(Path path, A accumulator, LineHandler<A> handler,
+                                        BooleanSupplier cancelled) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(path), 1 << 16), StandardCharsets.UTF_8), 1 << 16)) {
+            long position = 0;
+            long lines = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // a compressed file is a single task, so it is checked as often as a chunk is scanned
+                if ((++lines & 0xFFFF) == 0) {
+                    checkCancelled(cancelled);
+                }
+                // offsets are approximate for multi-byte characters, only their order matters here
+                long end = position + line.length() + 1;
+                if (!line.isEmpty()) {
+                    handler.handle(accumulator, line, position, end);
+                }
+                position = end;
+            }
+        }
+        return accumulator;
+    }
+
+    private static long[] splitAtNewlines(FileChannel channel, long from, long end) throws IOException {
+        long wanted = (end - from) / ((long) pool.getParallelism() * CHUNKS_PER_THREAD);
+        long chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, wanted));
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(from);
+        ByteBuffer probe = ByteBuffer.allocate(8192);
+        long position = from + chunkSize;
+        while (position < end) {
+            long lineEnd = findNextLineStart(channel, position, end, probe);
+            if (lineEnd >= end) {
+                break;
+            }
+            boundaries.add(lineEnd);
+            position = lineEnd + chunkSize;
+        }
+        boundaries.add(end);
+        long[] result = new long[boundaries.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = boundaries.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * @return the offset just past the last newline before end, so a line still being written is left out
+     */
+    public static long lastCompleteLineEnd(Path path, long from, long end) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer probe = ByteBuffer.allocate(8192);
+            long current = Math.min(end, channel.size());
+            while (current > from) {
+                int length = (int) Math.min(probe.capacity(), current - from);
+                probe.clear();
+                probe.limit(length);
+                int read = channel.read(probe, current - length);
+                for (int i = read - 1; i >= 0; i--) {
+                    if (probe.get(i) == '\n') {
+                        return current - length + i + 1;
+                    }
+                }
+                current -= length;
+            }
+            return from;
+        }
+    }
+
+    private static long findNextLineStart(FileChannel channel, long position, long end, ByteBuffer probe)
+            throws IOException {
+        long current = position;
+        while (current < end) {
+            probe.clear();
+            int read = channel.read(probe, current);
+            if (read <= 0) {
+                return end;
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return current + i + 1;
+                }
+            }
+            current += read;
+        }
+        return end;
+    }
+
+    private static <A> A scanChunk(FileChannel channel, long start, long end,
+                                   A accumulator, LineHandler<A> handler) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        byte[] scratch = new byte[4096];
+        int limit = buffer.limit();
+        int lineStart = 0;
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int contentEnd = lineEnd;
+            if (contentEnd > lineStart && buffer.get(contentEnd - 1) == '\r') {
+                contentEnd--;
+            }
+            int length = contentEnd - lineStart;
+            if (length > 0) {
+                if (length > scratch.length) {
+                    scratch = new byte[Math.max(length, scratch.length * 2)];
+                }
+                buffer.get(lineStart, scratch, 0, length);
+                handler.handle(accumulator, new String(scratch, 0, length, StandardCharsets.UTF_8),
+                        start + lineStart, start + Math.min(lineEnd + 1, limit));
+            }
+            lineStart = lineEnd + 1;
+        }
+        return accumulator;
+    }
+
+    private static final class SegmentTask<A> extends RecursiveTask<A> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient List<Segment> segments;
+        private final int first;
+        private final int last;
+        private final transient Function<Segment, A> supplier;
+        private final transient LineHandler<A> handler;
+        private final transient BinaryOperator<A> combiner;
+        private final transient BooleanSupplier cancelled;
+
+        SegmentTask(List<Segment> segments, int first, int last, Function<Segment, A> supplier,
+                    LineHandler<A> handler, BinaryOperator<A> combiner, BooleanSupplier cancelled) {
+            this.segments = segments;
+            this.first = first;
+            this.last = last;
+            this.supplier = supplier;
+            this.handler = handler;
+            this.combiner = combiner;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        protected A compute() {
+            if (last - first == 1) {
+                checkCancelled(cancelled);
+                try {
+                    return scanSegment(segments.get(first), supplier, handler, combiner, cancelled);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            int middle = (first + last) >>> 1;
+            SegmentTask<A> left = new SegmentTask<>(segments, first, middle, supplier, handler, combiner, cancelled);
+            SegmentTask<A> right = new SegmentTask<>(segments, middle, last, supplier, handler, combiner, cancelled);
+            right.fork();
+            A leftResult = left.compute();
+            return combiner.apply(leftResult, right.join());
+        }
+    }
+
+    private static final class ChunkTask<A> extends RecursiveTask<A> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient FileChannel channel;
+        private final long[] boundaries;
+        private final int first;
+        private final int last;
+        private final transient Supplier<A> supplier;
+        private final transient LineHandler<A> handler;
+        private final transient BinaryOperator<A> combiner;
+        private final transient BooleanSupplier cancelled;
+
+        ChunkTask(FileChannel channel, long[] boundaries, int first, int last, Supplier<A> supplier,
+                  LineHandler<A> handler, BinaryOperator<A> combiner, BooleanSupplier cancelled) {
+            this.channel = channel;
+            this.boundaries = boundaries;
+            this.first = first;
+            this.last = last;
+            this.supplier = supplier;
+            this.handler = handler;
+            this.combiner = combiner;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        protected A compute() {
+            if (last - first == 1) {
+                checkCancelled(cancelled);
+                try {
+                    return scanChunk(channel, boundaries[first], boundaries[last], supplier.get(), handler);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            int middle = (first + last) >>> 1;
+            ChunkTask<A> left = new ChunkTask<>(channel, boundaries, first, middle, supplier, handler, combiner,
+                    cancelled);
+            ChunkTask<A> right = new ChunkTask<>(channel, boundaries, middle, last, supplier, handler, combiner,
+                    cancelled);
+            right.fork();
+            A leftResult = left.compute();
+            return combiner.apply(leftResult, right.join());
+        }
+    }
+}
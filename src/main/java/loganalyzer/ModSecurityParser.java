@@ -1,135 +1,155 @@
 package loganalyzer;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import entrypoint.Config;
 import javafx.scene.control.DatePicker;
 
-import java.io.*;
-import java.nio.file.Files;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Locale;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import static utility.Utility.showAlert;
 
 public class ModSecurityParser {
     private static final Logger logger = Logger.getLogger(ModSecurityParser.class.getName());
+    private static final ThreadLocal<ModSecurityStreamReader> streamReader =
+            ThreadLocal.withInitial(ModSecurityStreamReader::new);
+    private static final int MAX_INTERNED_STRINGS = 1 << 16;
+    private static final String CACHE_KIND = "modsecurity";
+    // strings repeated across entries are interned, so most of an entry is its object and references
+    private static final long ESTIMATED_ENTRY_BYTES = 256;
     private ModSecurityParser() {
         throw new IllegalStateException("Utility class");
     }
 
-    public static String parseAttackType(String data) {
-        String regex = "\\[file\\s+\"([^\"]*)\"\\]";
-        Pattern pattern = Pattern.compile(regex);
-        Matcher matcher = pattern.matcher(data);
-
-        if (matcher.find()) {
-            String filePath = matcher.group(1);
-            String filename = filePath.substring(filePath.lastIndexOf('/') + 1);
-            return filename.replace(".conf", "");
-        } else {
-            return null;
+    /**
+     * Records parsed from one chunk of the file, with the bounded interner their repeated strings share.
+     */
+    private static final class LoadedChunk {
+        private final List<ModSecurity> rows = new ArrayList<>();
+        private final StringDictionary strings = new StringDictionary(MAX_INTERNED_STRINGS);
+
+        private LoadedChunk append(LoadedChunk next) {
+            rows.addAll(next.rows);
+            return this;
         }
     }
 
+    public static String parseAttackType(String data) {
+        return ModSecurityTags.of(data).attackType();
+    }
+
     public static String parseAttackMsg(String data) {
-        String regex = "\\[msg\\s+\"([^\"]*)\"\\]";
-        Pattern pattern = Pattern.compile(regex);
-        Matcher matcher = pattern.matcher(data);
-        if (matcher.find()) {
-            return matcher.group(1);
-        } else {
-            return null;
-        }
+        return ModSecurityTags.of(data).attackMsg();
     }
 
     public static String parseAttackData(String logEntry) {
-        String regex = "\\[data\\s+\"([^\"]*)\"\\]";
-        Pattern pattern = Pattern.compile(regex);
-        Matcher matcher = pattern.matcher(logEntry);
-        if (matcher.find()) {
-            return matcher.group(1);
-        } else {
-            return null;
-        }
+        return ModSecurityTags.of(logEntry).attackData();
     }
 
     public static String parseSeverity(String data) {
-        String regex = "\\[severity\\s+\"([^\"]*)\"\\]";
-        Pattern pattern = Pattern.compile(regex);
-        Matcher matcher = pattern.matcher(data);
-        if (matcher.find()) {
-            return matcher.group(1);
-        } else {
-            return null;
-        }
+        return ModSecurityTags.of(data).severity();
     }
 
+    /**
+     * Finds the "x.y.z" version following a '/' and followed by " (" in a producer string,
+     * e.g. "2.9.7" in "ModSecurity for Apache/2.9.7 (http://www.modsecurity.org/)".
+     */
     public static String parseVersion(String data) {
-        String regex = "(?<=\\/)(\\d+\\.\\d+\\.\\d+)(?= \\()";
-        Pattern pattern = Pattern.compile(regex);
-        Matcher matcher = pattern.matcher(data);
+        int slash = data.indexOf('/');
+        while (slash >= 0) {
+            int end = versionEnd(data, slash + 1);
+            if (end > 0 && data.startsWith(" (", end)) {
+                return data.substring(slash + 1, end);
+            }
+            slash = data.indexOf('/', slash + 1);
+        }
+        return null;
+    }
+
+    /**
+     * @return the end of a "digits.digits.digits" run starting at start, or -1 when there is none
+     */
+    private static int versionEnd(String data, int start) {
+        int i = start;
+        for (int part = 0; part < 3; part++) {
+            if (part > 0) {
+                if (i >= data.length() || data.charAt(i) != '.') {
+                    return -1;
+                }
+                i++;
+            }
+            int digitsStart = i;
+            while (i < data.length() && Character.isDigit(data.charAt(i))) {
+                i++;
+            }
+            if (i == digitsStart) {
+                return -1;
+            }
+        }
+        return i;
+    }
 
-        if (matcher.find()) {
-            return matcher.group(1);
-        } else {
+    /**
+     * @return the calendar day of the audit line's transaction, or null if it has none
+     */
+    public static LocalDate parseDay(String line) {
+        try {
+            long epochDay = streamReader.get().epochDayOf(line);
+            return epochDay == TimestampDecoder.INVALID ? null : LocalDate.ofEpochDay(epochDay);
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Skipped malformed audit line: {0}", line);
             return null;
         }
     }
 
+    /**
+     * Reads one audit line, safe to call from several threads at once.
+     * @param strings: interner shared by the records of one load
+     * @return the record of the line, or null when it belongs to another day or is not a transaction
+     */
+    public static ModSecurity parseLineOnDate(String line, LocalDate selectedDate, StringDictionary strings)
+            throws IOException {
+        return streamReader.get().read(line, selectedDate.toEpochDay(), strings);
+    }
+
     public static List<ModSecurity> parseModSecByDate(DatePicker datePicker) {
+        return parseModSecByDate(datePicker.getValue());
+    }
+
+    /**
+     * Same as parseModSecByDate(DatePicker), safe to call from a background thread.
+     * The entries are sorted by time, and the list is shared through the DayCache so it cannot be modified.
+     */
+    public static List<ModSecurity> parseModSecByDate(LocalDate selectedDate) {
         String logFilePath = Config.getModSecurityLogLocation();
         Path logPath = Paths.get(logFilePath);
-        ObjectMapper objectMapper = new ObjectMapper();
-        List<ModSecurity> logList = new LinkedList<>();
-        LocalDate selectedDate = datePicker.getValue();
-
-        if (Files.exists(logPath)) {
-            try (BufferedReader br = new BufferedReader(new FileReader(logFilePath))) {
-                String line;
-                while ((line = br.readLine()) != null) {
-                    JsonNode jsonNode = objectMapper.readTree(line);
-                    String auditData = jsonNode.path("audit_data").path("messages").get(0).asText();
-                    String requestLine = jsonNode.path("request").path("request_line").asText();
-                    String[] requestParts = requestLine.split(" ");
-                    JsonNode versionSection = jsonNode.path("audit_data").path("producer");
-                    String potentialVersion;
-                    if (versionSection.isMissingNode() || versionSection.isNull()) {
-                        potentialVersion = "";
-                    } else {
-                        potentialVersion = parseVersion(versionSection.get(0).asText());
-                    }
-                    DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss.SSSSSS Z", Locale.ENGLISH);
-
-                    String timestamp = jsonNode.path("transaction").path("time").asText();
-                    LocalDate logDate = LocalDate.parse(timestamp, formatter);
-
-                    if (logDate.equals(selectedDate)) {
-                        logList.add(new ModSecurity(
-                                potentialVersion,
-                                jsonNode.path("transaction").path("time").asText(),
-                                jsonNode.path("transaction").path("transaction_id").asText(),
-                                jsonNode.path("transaction").path("remote_address").asText(),
-                                requestParts[1],
-                                requestParts[0],
-                                requestParts[2],
-                                jsonNode.path("response").path("status").asInt(),
-                                jsonNode.path("request").path("headers").path("User-Agent").asText(),
-                                parseAttackType(auditData),
-                                parseAttackMsg(auditData),
-                                parseAttackData(auditData),
-                                parseSeverity(auditData)
-                        ));
-                    }
-                }
+        List<ModSecurity> logList = new ArrayList<>();
+
+        List<Path> logFiles = RotatedLogFiles.discover(logPath);
+        if (!logFiles.isEmpty()) {
+            try {
+                long selectedEpochDay = selectedDate.toEpochDay();
+                List<LogFileScanner.Segment> segments =
+                        RotatedLogFiles.segmentsFor(logFiles, selectedDate, ModSecurityParser::parseDay);
+                logList = DayCache.get(CACHE_KIND, logPath, selectedDate, segments, () -> {
+                    List<ModSecurity> entries = LogFileScanner.scan(segments, LoadedChunk::new,
+                            (chunk, line, start, end) -> {
+                                ModSecurity parsed = streamReader.get().read(line, selectedEpochDay, chunk.strings);
+                                if (parsed != null) {
+                                    chunk.rows.add(parsed);
+                                }
+                            },
+                            LoadedChunk::append).rows;
+                    // stable, so entries of the same second keep their file order
+                    entries.sort(Comparator.comparingLong(ModSecurity::getEpochMillis));
+                    return Collections.unmodifiableList(entries);
+                }, entries -> entries.size() * ESTIMATED_ENTRY_BYTES);
             } catch (IOException e) {
                 logger.log(Level.WARNING, "Failed to perform IO activities on log file.");
                 throw new RuntimeException(e);
@@ -142,4 +162,4 @@ public class ModSecurityParser {
         }
         return logList;
     }
-}
\ No newline at end of file
+}
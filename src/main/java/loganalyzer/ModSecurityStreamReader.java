@@ -0,0 +1,268 @@
+package loganalyzer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+
+/**
+ * Streaming reader for one line of a ModSecurity JSON audit log.
+ * Only the fields a ModSecurity record needs are pulled from the token stream, every other
+ * section (request bodies, response headers, stopwatch...) is skipped without being materialised,
+ * and a transaction from another day is dropped as soon as transaction.time has been read.
+ * Repeated values (addresses, request parts, user agents, rule names...) are interned through the
+ * dictionary passed by the caller, reading them straight from the parser buffer when possible.
+ * An instance holds the fields of the line being read and is not thread-safe.
+ */
+final class ModSecurityStreamReader {
+    private static final JsonFactory jsonFactory = new JsonFactory();
+    private final ModSecurityTags tags = new ModSecurityTags();
+
+    private StringDictionary strings;
+    private long selectedEpochDay;
+    private boolean rejected;
+    private String time;
+    private String transactionId;
+    private String remoteAddress;
+    private String requestLine;
+    private String userAgent;
+    private int status;
+    private String firstMessage;
+    private String producer;
+
+    /**
+     * @param selectedEpochDay: day to keep, see LocalDate.toEpochDay
+     * @param strings: interner shared by the records of one load
+     * @return the record of the line, or null when it belongs to another day or is not a transaction
+     */
+    ModSecurity read(String line, long selectedEpochDay, StringDictionary strings) throws IOException {
+        reset(selectedEpochDay);
+        this.strings = strings;
+        try (JsonParser parser = jsonFactory.createParser(line)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String section = parser.currentName();
+                parser.nextToken();
+                switch (section) {
+                    case "transaction" -> readTransaction(parser);
+                    case "request" -> readRequest(parser);
+                    case "response" -> readResponse(parser);
+                    case "audit_data" -> readAuditData(parser);
+                    default -> parser.skipChildren();
+                }
+                if (rejected) {
+                    return null;
+                }
+            }
+        }
+        if (time == null) {
+            return null;
+        }
+        tags.parse(firstMessage);
+        String request = requestLine == null ? "" : requestLine;
+        int[] requestBounds = splitRequestLine(request);
+        return new ModSecurity(
+                producer == null ? "" : strings.intern(ModSecurityParser.parseVersion(producer)),
+                time,
+                valueOrEmpty(transactionId),
+                valueOrEmpty(remoteAddress),
+                strings.intern(request, requestBounds[2], requestBounds[3]),
+                strings.intern(request, requestBounds[0], requestBounds[1]),
+                strings.intern(request, requestBounds[4], requestBounds[5]),
+                status,
+                valueOrEmpty(userAgent),
+                strings.intern(tags.attackType()),
+                strings.intern(tags.attackMsg()),
+                tags.attackData(),
+                strings.intern(tags.severity())
+        );
+    }
+
+    /**
+     * Reads only transaction.time, used to index the days of a file.
+     * @return the calendar day of the transaction, or TimestampDecoder.INVALID when absent
+     */
+    long epochDayOf(String line) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(line)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return TimestampDecoder.INVALID;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String section = parser.currentName();
+                if (parser.nextToken() != JsonToken.START_OBJECT || !"transaction".equals(section)) {
+                    parser.skipChildren();
+                    continue;
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    parser.nextToken();
+                    if ("time".equals(field)) {
+                        String value = parser.getValueAsString();
+                        return value == null
+                                ? TimestampDecoder.INVALID
+                                : TimestampDecoder.toLocalEpochDay(value, 0, value.length());
+                    }
+                    parser.skipChildren();
+                }
+            }
+        }
+        return TimestampDecoder.INVALID;
+    }
+
+    private void reset(long epochDay) {
+        selectedEpochDay = epochDay;
+        rejected = false;
+        time = null;
+        transactionId = null;
+        remoteAddress = null;
+        requestLine = null;
+        userAgent = null;
+        status = 0;
+        firstMessage = null;
+        producer = null;
+    }
+
+    private void readTransaction(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "time" -> {
+                    time = parser.getValueAsString();
+                    long epochDay = time == null
+                            ? TimestampDecoder.INVALID
+                            : TimestampDecoder.toLocalEpochDay(time, 0, time.length());
+                    if (epochDay != selectedEpochDay) {
+                        rejected = true;
+                        return;
+                    }
+                }
+                case "transaction_id" -> transactionId = parser.getValueAsString();
+                case "remote_address" -> remoteAddress = internedText(parser);
+                default -> parser.skipChildren();
+            }
+        }
+    }
+
+    private void readRequest(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "request_line" -> requestLine = parser.getValueAsString();
+                case "headers" -> readHeaders(parser);
+                default -> parser.skipChildren();
+            }
+        }
+    }
+
+    private void readHeaders(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String header = parser.currentName();
+            parser.nextToken();
+            if (userAgent == null && "User-Agent".equalsIgnoreCase(header)) {
+                userAgent = internedText(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void readResponse(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if ("status".equals(field)) {
+                status = parser.getValueAsInt();
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void readAuditData(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "messages" -> firstMessage = readFirstString(parser);
+                case "producer" -> producer = readFirstString(parser);
+                default -> parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * Reads a string, or the first element of an array of strings, and skips the rest of the array.
+     */
+    private static String readFirstString(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            return parser.currentToken().isScalarValue() ? parser.getValueAsString() : skip(parser);
+        }
+        String first = null;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (first == null && parser.currentToken().isScalarValue()) {
+                first = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return first;
+    }
+
+    private static String skip(JsonParser parser) throws IOException {
+        parser.skipChildren();
+        return null;
+    }
+
+    private String internedText(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.VALUE_STRING) {
+            return parser.getValueAsString();
+        }
+        return strings.intern(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+    }
+
+    /**
+     * Splits "METHOD path PROTOCOL" on its first and last space, the path may contain spaces.
+     * @return start and end of the method, the path and the protocol
+     */
+    static int[] splitRequestLine(String requestLine) {
+        int length = requestLine.length();
+        int firstSpace = requestLine.indexOf(' ');
+        if (firstSpace < 0) {
+            return new int[]{0, length, length, length, length, length};
+        }
+        int lastSpace = requestLine.lastIndexOf(' ');
+        if (lastSpace == firstSpace) {
+            return new int[]{0, firstSpace, firstSpace + 1, length, length, length};
+        }
+        return new int[]{0, firstSpace, firstSpace + 1, lastSpace, lastSpace + 1, length};
+    }
+
+    private static String valueOrEmpty(String value) {
+        return value == null ? "" : value;
+    }
+}
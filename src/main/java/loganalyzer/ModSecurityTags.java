@@ -0,0 +1,143 @@
+package loganalyzer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The [name "value"] tags of a ModSecurity message, such as file, id, msg, data, severity or tag.
+ * The message is scanned once, left to right, and every tag is recorded in order; repeated tags
+ * (tag is usually present several times) keep all their values.
+ * An instance can be refilled with parse() to avoid allocating one per message.
+ */
+public final class ModSecurityTags {
+    private final List<String> names = new ArrayList<>();
+    private final List<String> values = new ArrayList<>();
+
+    public static ModSecurityTags of(String message) {
+        ModSecurityTags tags = new ModSecurityTags();
+        tags.parse(message);
+        return tags;
+    }
+
+    /**
+     * Replaces the current tags with the ones found in the message.
+     */
+    public ModSecurityTags parse(String message) {
+        names.clear();
+        values.clear();
+        if (message == null) {
+            return this;
+        }
+        int length = message.length();
+        int i = message.indexOf('[');
+        while (i >= 0 && i < length) {
+            int next = readTag(message, i, length);
+            i = message.indexOf('[', next);
+        }
+        return this;
+    }
+
+    /**
+     * Reads a tag starting at the '[' found at position start.
+     * @return the position where scanning should resume
+     */
+    private int readTag(String message, int start, int length) {
+        int nameStart = start + 1;
+        int i = nameStart;
+        while (i < length && isNameChar(message.charAt(i))) {
+            i++;
+        }
+        int nameEnd = i;
+        if (nameEnd == nameStart) {
+            return nameStart;
+        }
+        while (i < length && Character.isWhitespace(message.charAt(i))) {
+            i++;
+        }
+        if (i == nameEnd || i >= length || message.charAt(i) != '"') {
+            return nameStart;
+        }
+        int valueStart = ++i;
+        while (i < length) {
+            char c = message.charAt(i);
+            if (c == '\\' && i + 1 < length) {
+                i += 2;
+            } else if (c == '"') {
+                break;
+            } else {
+                i++;
+            }
+        }
+        if (i + 1 >= length || message.charAt(i + 1) != ']') {
+            return nameStart;
+        }
+        names.add(message.substring(nameStart, nameEnd));
+        values.add(message.substring(valueStart, i));
+        return i + 2;
+    }
+
+    private static boolean isNameChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    /**
+     * @return the value of the first tag with this name, or null when absent
+     */
+    public String get(String name) {
+        for (int i = 0; i < names.size(); i++) {
+            if (names.get(i).equals(name)) {
+                return values.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the values of every tag with this name, in message order
+     */
+    public List<String> getAll(String name) {
+        List<String> matches = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            if (names.get(i).equals(name)) {
+                matches.add(values.get(i));
+            }
+        }
+        return matches;
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    public String nameAt(int index) {
+        return names.get(index);
+    }
+
+    public String valueAt(int index) {
+        return values.get(index);
+    }
+
+    /**
+     * @return the rule file name without directory and ".conf", e.g. "REQUEST-930-APPLICATION-ATTACK-LFI"
+     */
+    public String attackType() {
+        String filePath = get("file");
+        if (filePath == null) {
+            return null;
+        }
+        String filename = filePath.substring(filePath.lastIndexOf('/') + 1);
+        return filename.replace(".conf", "");
+    }
+
+    public String attackMsg() {
+        return get("msg");
+    }
+
+    public String attackData() {
+        return get("data");
+    }
+
+    public String severity() {
+        return get("severity");
+    }
+}
@@ -0,0 +1,172 @@
+package loganalyzer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A live log file together with the siblings logrotate moved it to: access.log.1, access.log.2.gz,
+ * or access.log-20240501(.gz) with dateext.
+ * Plain files are located through their DayOffsetIndex. A compressed file is only opened to read the
+ * day of its first lines, and is assumed to end on the first day of the next newer file.
+ */
+public final class RotatedLogFiles {
+    private RotatedLogFiles() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    private static final Logger logger = Logger.getLogger(RotatedLogFiles.class.getName());
+    private static final String GZIP_SUFFIX = ".gz";
+    private static final int FIRST_DAY_PROBE_LINES = 100;
+    private static final Map<Path, CompressedHead> compressedHeads = new ConcurrentHashMap<>();
+
+    /**
+     * First day of a compressed file, valid as long as its size and modification time are unchanged.
+     */
+    private static final class CompressedHead {
+        private final long size;
+        private final long modified;
+        private final LocalDate firstDay;
+
+        private CompressedHead(long size, long modified, LocalDate firstDay) {
+            this.size = size;
+            this.modified = modified;
+            this.firstDay = firstDay;
+        }
+    }
+
+    /**
+     * @return the live file, when present, followed by its rotated siblings from newest to oldest
+     */
+    public static List<Path> discover(Path livePath) {
+        Path absolutePath = livePath.toAbsolutePath().normalize();
+        Path directory = absolutePath.getParent();
+        String liveName = absolutePath.getFileName().toString();
+        List<Path> files = new ArrayList<>();
+        if (Files.isRegularFile(absolutePath)) {
+            files.add(absolutePath);
+        }
+        if (directory == null || !Files.isDirectory(directory)) {
+            return files;
+        }
+        try (Stream<Path> siblings = Files.list(directory)) {
+            siblings.filter(path -> rotationNumber(liveName, path.getFileName().toString()) >= 0)
+                    .filter(Files::isRegularFile)
+                    .sorted(Comparator.comparingLong(path -> rotationNumber(liveName, path.getFileName().toString())))
+                    .forEach(files::add);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to list rotated logs of " + absolutePath, e);
+        }
+        return files;
+    }
+
+    /**
+     * Orders rotated siblings from newest to oldest: access.log.1 before access.log.2, and
+     * access.log-20240502 before access.log-20240501.
+     * @return the sort key of the sibling, or -1 when the name is not a rotation of liveName
+     */
+    static long rotationNumber(String liveName, String name) {
+        if (name.length() <= liveName.length() + 1 || !name.startsWith(liveName)) {
+            return -1;
+        }
+        char separator = name.charAt(liveName.length());
+        int end = name.endsWith(GZIP_SUFFIX) ? name.length() - GZIP_SUFFIX.length() : name.length();
+        int start = liveName.length() + 1;
+        if ((separator != '.' && separator != '-') || end <= start || end - start > 18) {
+            return -1;
+        }
+        long number = 0;
+        for (int i = start; i < end; i++) {
+            char c = name.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            number = number * 10 + (c - '0');
+        }
+        // dateext suffixes grow with time, numbered ones grow with age
+        return separator == '.' ? number : Long.MAX_VALUE / 2 - number;
+    }
+
+    public static boolean isCompressed(Path path) {
+        return path.getFileName().toString().endsWith(GZIP_SUFFIX);
+    }
+
+    /**
+     * Picks the parts of the files that may hold lines of the given day.
+     * @param files: the files returned by discover(), newest first
+     * @return the segments to scan, oldest first so results keep the chronological order
+     */
+    public static List<LogFileScanner.Segment> segmentsFor(List<Path> files, LocalDate day,
+                                                          DayOffsetIndex.DayReader dayReader) throws IOException {
+        List<LogFileScanner.Segment> segments = new ArrayList<>();
+        LocalDate newerFirstDay = null;
+        for (Path file : files) {
+            LocalDate firstDay;
+            if (isCompressed(file)) {
+                firstDay = compressedFirstDay(file, dayReader);
+                if (firstDay != null && !day.isBefore(firstDay)
+                        && (newerFirstDay == null || !day.isAfter(newerFirstDay))) {
+                    segments.add(LogFileScanner.Segment.compressed(file));
+                }
+            } else {
+                DayOffsetIndex index = DayOffsetIndex.forFile(file, dayReader);
+                long[] range = index.rangeOf(day);
+                if (range != null) {
+                    segments.add(LogFileScanner.Segment.of(file, range[0], range[1]));
+                }
+                firstDay = index.firstDay();
+            }
+            if (firstDay != null) {
+                if (firstDay.isBefore(day)) {
+                    // older files end on or before this file's first day
+                    break;
+                }
+                newerFirstDay = firstDay;
+            }
+        }
+        Collections.reverse(segments);
+        return segments;
+    }
+
+    private static LocalDate compressedFirstDay(Path file, DayOffsetIndex.DayReader dayReader) throws IOException {
+        long size = Files.size(file);
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        CompressedHead head = compressedHeads.get(file);
+        if (head == null || head.size != size || head.modified != modified) {
+            head = new CompressedHead(size, modified, readFirstDay(file, dayReader));
+            compressedHeads.put(file, head);
+        }
+        return head.firstDay;
+    }
+
+    private static LocalDate readFirstDay(Path file, DayOffsetIndex.DayReader dayReader) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+            String line;
+            int probed = 0;
+            while (probed++ < FIRST_DAY_PROBE_LINES && (line = reader.readLine()) != null) {
+                LocalDate day = dayReader.dayOf(line);
+                if (day != null) {
+                    return day;
+                }
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to read compressed log " + file + ", it will be skipped.", e);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,12 @@
+package loganalyzer;
+
+/**
+ * Thrown when a log file was truncated or replaced under the rows read from it, the day must be reloaded.
+ */
+public class StaleLogException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public StaleLogException(String message) {
+        super(message);
+    }
+}
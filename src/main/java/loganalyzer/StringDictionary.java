@@ -0,0 +1,185 @@
+package loganalyzer;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * Dictionary assigning a dense integer id to every distinct string of a column.
+ * Ids start at 0 and follow first insertion order, and every id maps to a single String instance,
+ * so identical values share memory and can be compared by id.
+ * Values can be looked up straight from a range of a line, a String is only allocated the first
+ * time a value is seen. A dictionary created with a limit stops growing once full and is then
+ * used as a bounded interner. Not thread-safe.
+ */
+public final class StringDictionary {
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final int limit;
+    private String[] values = new String[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    // open-addressing table of id + 1, 0 marks an empty slot
+    private int[] slots = new int[INITIAL_CAPACITY * 2];
+    private int size;
+
+    public StringDictionary() {
+        this(UNLIMITED);
+    }
+
+    /**
+     * @param limit: maximum number of distinct values, new values past it are not added
+     */
+    public StringDictionary(int limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * @return the id of the value, adding it to the dictionary when it is new
+     */
+    public int idOf(String value) {
+        return idOf(value, 0, value.length());
+    }
+
+    /**
+     * @return the id of text[start, end), adding it to the dictionary when it is new,
+     * or -1 when it is new and the dictionary is full
+     */
+    public int idOf(CharSequence text, int start, int end) {
+        int hash = hash(text, start, end);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != 0) {
+            int id = slots[slot] - 1;
+            if (hashes[id] == hash && contentEquals(values[id], text, start, end)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size >= limit) {
+            return -1;
+        }
+        int id = size++;
+        if (id == values.length) {
+            values = Arrays.copyOf(values, id * 2);
+            hashes = Arrays.copyOf(hashes, id * 2);
+        }
+        values[id] = text.subSequence(start, end).toString();
+        hashes[id] = hash;
+        slots[slot] = id + 1;
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    /**
+     * @return the id of the value, or -1 when the dictionary does not hold it
+     */
+    public int find(String value) {
+        return find(value, 0, value.length());
+    }
+
+    /**
+     * @return the id of text[start, end), or -1 when the dictionary does not hold it
+     */
+    public int find(CharSequence text, int start, int end) {
+        int hash = hash(text, start, end);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != 0) {
+            int id = slots[slot] - 1;
+            if (hashes[id] == hash && contentEquals(values[id], text, start, end)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the shared instance equal to text[start, end), or a new String when the dictionary is full
+     */
+    public String intern(CharSequence text, int start, int end) {
+        int id = idOf(text, start, end);
+        return id < 0 ? text.subSequence(start, end).toString() : values[id];
+    }
+
+    public String intern(char[] chars, int offset, int length) {
+        return intern(CharBuffer.wrap(chars, offset, length), 0, length);
+    }
+
+    public String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        int id = idOf(value, 0, value.length());
+        return id < 0 ? value : values[id];
+    }
+
+    public String valueOf(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("Unknown dictionary id " + id);
+        }
+        return values[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds every value of another dictionary.
+     * @return mapping from the other dictionary's ids to ids in this one
+     */
+    public int[] merge(StringDictionary other) {
+        int[] mapping = new int[other.size()];
+        for (int i = 0; i < mapping.length; i++) {
+            mapping[i] = idOf(other.valueOf(i));
+        }
+        return mapping;
+    }
+
+    /**
+     * Rough heap footprint, used to budget caches.
+     */
+    public long estimatedBytes() {
+        long bytes = 8L * values.length + 4L * slots.length;
+        for (int i = 0; i < size; i++) {
+            bytes += 40L + values[i].length();
+        }
+        return bytes;
+    }
+
+    private void rehash() {
+        int[] newSlots = new int[slots.length * 2];
+        int mask = newSlots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (newSlots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            newSlots[slot] = id + 1;
+        }
+        slots = newSlots;
+    }
+
+    private static int hash(CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean contentEquals(String value, CharSequence text, int start, int end) {
+        if (value.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
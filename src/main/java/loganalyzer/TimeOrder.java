@@ -0,0 +1,100 @@
+package loganalyzer;
+
+import java.util.function.IntToLongFunction;
+
+/**
+ * Helpers keeping the rows of a loaded day in timestamp order, so time ranges are found with two
+ * binary searches instead of a pass over the day.
+ */
+public final class TimeOrder {
+    private TimeOrder() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * @param times: timestamp of each row, in ascending order
+     * @return the first row whose time is at or after millis, rowCount when there is none
+     */
+    public static int firstAtOrAfter(IntToLongFunction times, int rowCount, long millis) {
+        int low = 0;
+        int high = rowCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (times.applyAsLong(middle) < millis) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Stable sort of the first size timestamps.
+     * @return the rows in time order, or null when they already are
+     */
+    static int[] sortedOrder(long[] times, int size) {
+        boolean sorted = true;
+        for (int row = 1; row < size && sorted; row++) {
+            sorted = times[row - 1] <= times[row];
+        }
+        if (sorted) {
+            return null;
+        }
+        int[] order = new int[size];
+        for (int row = 0; row < size; row++) {
+            order[row] = row;
+        }
+        mergeSort(times, order, new int[size], 0, size);
+        return order;
+    }
+
+    /**
+     * Log lines are mostly written in order, so most merges are skipped by the ordered-halves check.
+     */
+    private static void mergeSort(long[] times, int[] order, int[] buffer, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(times, order, buffer, from, middle);
+        mergeSort(times, order, buffer, middle, to);
+        if (times[order[middle - 1]] <= times[order[middle]]) {
+            return;
+        }
+        System.arraycopy(order, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && times[buffer[left]] <= times[buffer[right]])) {
+                order[i] = buffer[left++];
+            } else {
+                order[i] = buffer[right++];
+            }
+        }
+    }
+
+    static long[] permute(long[] column, int[] order) {
+        long[] permuted = new long[column.length];
+        for (int row = 0; row < order.length; row++) {
+            permuted[row] = column[order[row]];
+        }
+        return permuted;
+    }
+
+    static int[] permute(int[] column, int[] order) {
+        int[] permuted = new int[column.length];
+        for (int row = 0; row < order.length; row++) {
+            permuted[row] = column[order[row]];
+        }
+        return permuted;
+    }
+
+    static short[] permute(short[] column, int[] order) {
+        short[] permuted = new short[column.length];
+        for (int row = 0; row < order.length; row++) {
+            permuted[row] = column[order[row]];
+        }
+        return permuted;
+    }
+}
@@ -0,0 +1,184 @@
+package loganalyzer;
+
+/**
+ * Decoder for the fixed-width log timestamp layout "dd/MMM/yyyy:HH:mm:ss Z", as written by Apache,
+ * and its ModSecurity variant "dd/MMM/yyyy:HH:mm:ss.SSSSSS Z".
+ * Every field sits at a known position, so the text is read digit by digit instead of going
+ * through a DateTimeFormatter, and nothing is allocated.
+ */
+public final class TimestampDecoder {
+    private TimestampDecoder() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    public static final long INVALID = Long.MIN_VALUE;
+    private static final String MONTHS = "JanFebMarAprMayJunJulAugSepOctNovDec";
+    private static final int DATE_LENGTH = 11;
+    private static final int DATE_TIME_LENGTH = 20;
+    private static final int NO_OFFSET = Integer.MIN_VALUE;
+
+    public static long toEpochMillis(CharSequence timestamp) {
+        if (timestamp == null) {
+            return INVALID;
+        }
+        return toEpochMillis(timestamp, 0, timestamp.length());
+    }
+
+    /**
+     * @return milliseconds since the epoch, or INVALID when the text does not follow the layout
+     */
+    public static long toEpochMillis(CharSequence text, int start, int end) {
+        long localMillis = toLocalEpochMillis(text, start, end);
+        if (localMillis == INVALID) {
+            return INVALID;
+        }
+        int offsetMinutes = readOffsetMinutes(text, offsetPosition(text, start, end), end);
+        if (offsetMinutes == NO_OFFSET) {
+            return INVALID;
+        }
+        return localMillis - offsetMinutes * 60_000L;
+    }
+
+    public static long toLocalEpochMillis(CharSequence timestamp) {
+        if (timestamp == null) {
+            return INVALID;
+        }
+        return toLocalEpochMillis(timestamp, 0, timestamp.length());
+    }
+
+    /**
+     * @return the date and time printed in the timestamp, as milliseconds since 1970-01-01T00:00 of the
+     * same wall clock, the zone offset left out, or INVALID when the text does not follow the layout
+     */
+    public static long toLocalEpochMillis(CharSequence text, int start, int end) {
+        long epochDay = toLocalEpochDay(text, start, end);
+        if (epochDay == INVALID || end - start < DATE_TIME_LENGTH) {
+            return INVALID;
+        }
+        int hour = twoDigits(text, start + 12);
+        int minute = twoDigits(text, start + 15);
+        int second = twoDigits(text, start + 18);
+        if (hour < 0 || minute < 0 || second < 0 || text.charAt(start + 11) != ':') {
+            return INVALID;
+        }
+        int position = start + DATE_TIME_LENGTH;
+        int millis = 0;
+        if (position < end && text.charAt(position) == '.') {
+            position++;
+            int scale = 100;
+            while (position < end && isDigit(text.charAt(position))) {
+                millis += (text.charAt(position) - '0') * scale;
+                scale /= 10;
+                position++;
+            }
+        }
+        long epochSecond = epochDay * 86400 + hour * 3600L + minute * 60L + second;
+        return epochSecond * 1000 + millis;
+    }
+
+    public static int toOffsetMinutes(CharSequence timestamp) {
+        if (timestamp == null) {
+            return 0;
+        }
+        return toOffsetMinutes(timestamp, 0, timestamp.length());
+    }
+
+    /**
+     * @return the zone offset of the timestamp in minutes, e.g. 420 for "+0700", or 0 when it is unreadable
+     */
+    public static int toOffsetMinutes(CharSequence text, int start, int end) {
+        if (text == null || end - start < DATE_TIME_LENGTH) {
+            return 0;
+        }
+        int offsetMinutes = readOffsetMinutes(text, offsetPosition(text, start, end), end);
+        return offsetMinutes == NO_OFFSET ? 0 : offsetMinutes;
+    }
+
+    /**
+     * @return the position of the space before the zone offset, after the fraction of a second if any
+     */
+    private static int offsetPosition(CharSequence text, int start, int end) {
+        int position = start + DATE_TIME_LENGTH;
+        if (position < end && text.charAt(position) == '.') {
+            position++;
+            while (position < end && isDigit(text.charAt(position))) {
+                position++;
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Reads " +HHMM" starting at position.
+     */
+    private static int readOffsetMinutes(CharSequence text, int position, int end) {
+        if (position + 5 >= end || text.charAt(position) != ' ') {
+            return NO_OFFSET;
+        }
+        char sign = text.charAt(position + 1);
+        int offsetHours = twoDigits(text, position + 2);
+        int offsetMinutes = twoDigits(text, position + 4);
+        if ((sign != '+' && sign != '-') || offsetHours < 0 || offsetMinutes < 0) {
+            return NO_OFFSET;
+        }
+        int total = offsetHours * 60 + offsetMinutes;
+        return sign == '-' ? -total : total;
+    }
+
+    /**
+     * @return the calendar day printed in the timestamp as an epoch day (see LocalDate.toEpochDay),
+     * or INVALID when the text does not follow the layout
+     */
+    public static long toLocalEpochDay(CharSequence text, int start, int end) {
+        if (text == null || end - start < DATE_LENGTH
+                || text.charAt(start + 2) != '/' || text.charAt(start + 6) != '/') {
+            return INVALID;
+        }
+        int day = twoDigits(text, start);
+        int month = month(text, start + 3);
+        int year = twoDigits(text, start + 7) * 100 + twoDigits(text, start + 9);
+        if (day < 1 || day > 31 || month < 0 || year < 0) {
+            return INVALID;
+        }
+        return epochDay(year, month, day);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int twoDigits(CharSequence text, int position) {
+        char tens = text.charAt(position);
+        char units = text.charAt(position + 1);
+        if (!isDigit(tens) || !isDigit(units)) {
+            return -10000;
+        }
+        return (tens - '0') * 10 + (units - '0');
+    }
+
+    private static int month(CharSequence text, int position) {
+        char first = text.charAt(position);
+        char second = text.charAt(position + 1);
+        char third = text.charAt(position + 2);
+        for (int i = 0; i < 12; i++) {
+            int offset = i * 3;
+            if (MONTHS.charAt(offset) == first && MONTHS.charAt(offset + 1) == second
+                    && MONTHS.charAt(offset + 2) == third) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Days from 1970-01-01 of a proleptic Gregorian date, same result as LocalDate.of(y, m, d).toEpochDay().
+     */
+    private static long epochDay(int year, int month, int day) {
+        long y = month <= 2 ? year - 1L : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153L * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+}
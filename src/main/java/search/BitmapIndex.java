@@ -0,0 +1,76 @@
+package search;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * One RoaringBitmap of rows per value of a low-cardinality column, e.g. status codes or the
+ * dictionary ids of the HTTP methods. Values are small non-negative ints used as array indexes.
+ */
+public final class BitmapIndex {
+    private final RoaringBitmap[] rowsByValue;
+
+    private BitmapIndex(RoaringBitmap[] rowsByValue) {
+        this.rowsByValue = rowsByValue;
+    }
+
+    /**
+     * Builds the index in one pass over the rows.
+     * @param valueOf: the value of a row, negative values are not indexed
+     */
+    public static BitmapIndex build(int rowCount, IntUnaryOperator valueOf) {
+        RoaringBitmap[] rowsByValue = new RoaringBitmap[16];
+        for (int row = 0; row < rowCount; row++) {
+            Query.checkCancelled(row);
+            int value = valueOf.applyAsInt(row);
+            if (value < 0) {
+                continue;
+            }
+            if (value >= rowsByValue.length) {
+                rowsByValue = Arrays.copyOf(rowsByValue, Math.max(value + 1, rowsByValue.length * 2));
+            }
+            if (rowsByValue[value] == null) {
+                rowsByValue[value] = new RoaringBitmap();
+            }
+            rowsByValue[value].add(row);
+        }
+        return new BitmapIndex(rowsByValue);
+    }
+
+    /**
+     * @return the rows holding the value
+     */
+    public RoaringBitmap rowsWith(int value) {
+        if (value < 0 || value >= rowsByValue.length || rowsByValue[value] == null) {
+            return new RoaringBitmap();
+        }
+        return rowsByValue[value];
+    }
+
+    /**
+     * @return the rows whose value matches, the union of the bitmaps of the matching values
+     */
+    public RoaringBitmap rowsMatching(IntPredicate matches) {
+        RoaringBitmap rows = new RoaringBitmap();
+        for (int value = 0; value < rowsByValue.length; value++) {
+            if (rowsByValue[value] != null && matches.test(value)) {
+                rows = rows.or(rowsByValue[value]);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Rough heap footprint, used to budget caches.
+     */
+    public long estimatedBytes() {
+        long bytes = 16L + rowsByValue.length * 8L;
+        for (RoaringBitmap rows : rowsByValue) {
+            if (rows != null) {
+                bytes += rows.estimatedBytes();
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,101 @@
+package search;
+
+import loganalyzer.StringDictionary;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Binary prefix trie over the distinct addresses of an IP column, parsed once into 128-bit keys.
+ * The trie is stored flattened as its leaves in order, which is the keys sorted as unsigned
+ * numbers: the addresses under any trie node, i.e. sharing a CIDR prefix, are a contiguous run
+ * of leaves, and so are the addresses of a first-last range. A lookup is therefore two binary
+ * searches, logarithmic in the number of distinct addresses, whatever the size of the network.
+ * Values that are not literal addresses, e.g. "-" or host names, are left out.
+ * Immutable once built, values added to the dictionary afterwards are not indexed.
+ */
+public final class IpPrefixIndex {
+    private final long[] highs;
+    private final long[] lows;
+    private final int[] valueIds;
+
+    public IpPrefixIndex(StringDictionary dictionary) {
+        int distinct = dictionary.size();
+        IpRanges.Key[] keys = new IpRanges.Key[distinct];
+        Integer[] order = new Integer[distinct];
+        int count = 0;
+        for (int id = 0; id < distinct; id++) {
+            Query.checkCancelled(id);
+            IpRanges.Key key = IpRanges.keyOf(dictionary.valueOf(id));
+            if (key != null) {
+                keys[id] = key;
+                order[count++] = id;
+            }
+        }
+        Arrays.sort(order, 0, count, (left, right) -> keys[left].compareTo(keys[right]));
+        highs = new long[count];
+        lows = new long[count];
+        valueIds = new int[count];
+        for (int leaf = 0; leaf < count; leaf++) {
+            IpRanges.Key key = keys[order[leaf]];
+            highs[leaf] = key.high();
+            lows[leaf] = key.low();
+            valueIds[leaf] = order[leaf];
+        }
+    }
+
+    /**
+     * @return the ids of the distinct values that are addresses in one of the ranges
+     */
+    public BitSet valuesIn(IpRanges ranges) {
+        BitSet matchingIds = new BitSet();
+        for (IpRanges.Range range : ranges.ranges()) {
+            int from = firstLeafAtOrAfter(range.first().high(), range.first().low());
+            int to = firstLeafAfter(range.last().high(), range.last().low());
+            for (int leaf = from; leaf < to; leaf++) {
+                matchingIds.set(valueIds[leaf]);
+            }
+        }
+        return matchingIds;
+    }
+
+    private int firstLeafAtOrAfter(long high, long low) {
+        int from = 0;
+        int to = highs.length;
+        while (from < to) {
+            int middle = (from + to) >>> 1;
+            if (compare(middle, high, low) < 0) {
+                from = middle + 1;
+            } else {
+                to = middle;
+            }
+        }
+        return from;
+    }
+
+    private int firstLeafAfter(long high, long low) {
+        int from = 0;
+        int to = highs.length;
+        while (from < to) {
+            int middle = (from + to) >>> 1;
+            if (compare(middle, high, low) <= 0) {
+                from = middle + 1;
+            } else {
+                to = middle;
+            }
+        }
+        return from;
+    }
+
+    private int compare(int leaf, long high, long low) {
+        int byHigh = Long.compareUnsigned(highs[leaf], high);
+        return byHigh != 0 ? byHigh : Long.compareUnsigned(lows[leaf], low);
+    }
+
+    /**
+     * Rough heap footprint, used to budget caches.
+     */
+    public long estimatedBytes() {
+        return 64L + highs.length * 20L;
+    }
+}
@@ -0,0 +1,193 @@
+package search;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A list of IPv4 or IPv6 address ranges, as typed in an ip: clause or the IP filter, e.g.
+ * "10.0.0.0/8, 192.168.1.10-192.168.1.50, 2001:db8::1".
+ * Each part is a network in CIDR notation, a first-last range or a single address, matched exactly.
+ * Addresses are compared as 128-bit keys: IPv6 addresses as they are, IPv4 addresses mapped into
+ * ::ffff:0:0/96, so both families share one IpPrefixIndex and ::ffff:10.1.1.1 equals 10.1.1.1.
+ */
+public final class IpRanges {
+    private static final long IPV4_MAPPED_HIGH = 0L;
+    private static final long IPV4_MAPPED_LOW = 0xFFFFL << 32;
+
+    /**
+     * An address as a 128-bit unsigned number, high holding its first 8 bytes.
+     */
+    record Key(long high, long low) implements Comparable<Key> {
+        @Override
+        public int compareTo(Key other) {
+            int byHigh = Long.compareUnsigned(high, other.high);
+            return byHigh != 0 ? byHigh : Long.compareUnsigned(low, other.low);
+        }
+    }
+
+    record Range(Key first, Key last) {
+    }
+
+    private final List<Range> ranges;
+
+    private IpRanges(List<Range> ranges) {
+        this.ranges = ranges;
+    }
+
+    /**
+     * @return the ranges, or null when a part of the comma-separated list is not an address, a
+     *         network or a range, e.g. an address being typed, which is then searched as text
+     */
+    public static IpRanges parse(String text) {
+        List<Range> ranges = new ArrayList<>();
+        for (String part : text.split(",")) {
+            String trimmed = part.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            Range range = parseRange(trimmed);
+            if (range == null) {
+                return null;
+            }
+            ranges.add(range);
+        }
+        return ranges.isEmpty() ? null : new IpRanges(ranges);
+    }
+
+    private static Range parseRange(String text) {
+        int slash = text.indexOf('/');
+        if (slash >= 0) {
+            return parseNetwork(text.substring(0, slash).trim(), text.substring(slash + 1).trim());
+        }
+        int dash = text.indexOf('-');
+        if (dash >= 0) {
+            Key first = keyOf(text.substring(0, dash).trim());
+            Key last = keyOf(text.substring(dash + 1).trim());
+            if (first == null || last == null || first.compareTo(last) > 0) {
+                return null;
+            }
+            return new Range(first, last);
+        }
+        Key address = keyOf(text);
+        return address == null ? null : new Range(address, address);
+    }
+
+    private static Range parseNetwork(String address, String prefix) {
+        byte[] bytes = toBytes(address);
+        if (bytes == null) {
+            return null;
+        }
+        int prefixLength;
+        try {
+            prefixLength = Integer.parseInt(prefix);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (prefixLength < 0 || prefixLength > bytes.length * 8) {
+            return null;
+        }
+        if (bytes.length == 4) {
+            prefixLength += 96;
+        }
+        Key network = keyOf(bytes);
+        // Java shifts by the distance modulo 64, so the 0 and 64 bit masks are spelled out
+        long highMask = prefixLength == 0 ? 0 : prefixLength >= 64 ? -1L : -1L << (64 - prefixLength);
+        long lowMask = prefixLength <= 64 ? 0 : -1L << (128 - prefixLength);
+        return new Range(new Key(network.high() & highMask, network.low() & lowMask),
+                new Key(network.high() | ~highMask, network.low() | ~lowMask));
+    }
+
+    List<Range> ranges() {
+        return ranges;
+    }
+
+    public boolean contains(String address) {
+        Key key = keyOf(address);
+        if (key == null) {
+            return false;
+        }
+        for (Range range : ranges) {
+            if (range.first().compareTo(key) <= 0 && key.compareTo(range.last()) <= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the key of a literal address, or null when the text is not one
+     */
+    static Key keyOf(String text) {
+        byte[] bytes = toBytes(text);
+        return bytes == null ? null : keyOf(bytes);
+    }
+
+    private static Key keyOf(byte[] bytes) {
+        if (bytes.length == 4) {
+            long address = ((bytes[0] & 0xFFL) << 24) | ((bytes[1] & 0xFFL) << 16)
+                    | ((bytes[2] & 0xFFL) << 8) | (bytes[3] & 0xFFL);
+            return new Key(IPV4_MAPPED_HIGH, IPV4_MAPPED_LOW | address);
+        }
+        long high = 0;
+        long low = 0;
+        for (int i = 0; i < 8; i++) {
+            high = (high << 8) | (bytes[i] & 0xFFL);
+            low = (low << 8) | (bytes[i + 8] & 0xFFL);
+        }
+        return new Key(high, low);
+    }
+
+    /**
+     * Parses a literal IPv4 or IPv6 address, never resolving host names.
+     * @return the address bytes, or null when the text is not a literal address
+     */
+    public static byte[] toBytes(String text) {
+        if (text.isEmpty() || (text.indexOf('.') < 0 && text.indexOf(':') < 0)) {
+            return null;
+        }
+        if (text.indexOf(':') < 0) {
+            return ipv4Bytes(text);
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            boolean hex = (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+            // anything else would be resolved through DNS
+            if (!(hex || c == ':' || c == '.')) {
+                return null;
+            }
+        }
+        try {
+            return InetAddress.getByName(text).getAddress();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Dotted quads only, this runs once per distinct address of a day.
+     */
+    private static byte[] ipv4Bytes(String text) {
+        byte[] bytes = new byte[4];
+        int part = 0;
+        int value = 0;
+        int digits = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : '.';
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                if (++digits > 3 || value > 255) {
+                    return null;
+                }
+            } else if (c == '.' && digits > 0 && part < 4) {
+                bytes[part++] = (byte) value;
+                value = 0;
+                digits = 0;
+            } else {
+                return null;
+            }
+        }
+        return part == 4 ? bytes : null;
+    }
+}
@@ -0,0 +1,764 @@
+package search;
+
+import loganalyzer.StringDictionary;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.stream.IntStream;
+
+/**
+ * A search of the log views, compiled once into a predicate tree.
+ * Syntax, clauses are ANDed unless separated by OR:
+ *   word "quoted phrase"         substring of any text column
+ *   path:"/wp-admin" ua:curl attack:sqli                 substring of the column
+ *   ip:10.1.1.1 ip:10.0.0.0/8,192.168.1.10-192.168.1.50  exact address, CIDR network, range or list
+ *   status:404 status:400-499 status:4xx                  status code
+ *   after:"2024-05-01 10:00" before:2024-05-02            time bounds, on the time printed in the log
+ *   from:"2024-05-01 10:15" before:"2024-05-01 10:30"     from is inclusive, after and before are not
+ *   path~"^/wp-(admin|login)" ua~"(?i)sqlmap|nikto"      regex on a column, see Regex
+ *   ~"union.+select"                                      regex on any text column
+ *   -clause  (a OR b)                                     negation and grouping
+ * Clauses of an AND are evaluated from the cheapest to the most expensive, each one only
+ * looking at the rows the previous ones kept. Clauses on status codes, time and low-cardinality
+ * columns are answered from bitmap indexes first and combined with bitmap AND/OR/ANDNOT, so
+ * rows are only visited by the clauses no index can answer. Time bounds are binary searches,
+ * rows being in time order, only the rows whose zone offset decides the bound being visited, and
+ * address ranges two binary searches in the IpPrefixIndex of the
+ * distinct addresses. An ip value that is not an address list yet is searched as a substring.
+ * Regexes run on the distinct values of their column rather than on rows, in parallel, and only
+ * on the values holding one of the literals the pattern requires, found through the trigram
+ * index. A pattern that does not compile, e.g. with a backreference, matches nothing.
+ * Evaluation throws CancellationException when its thread is interrupted, and
+ * SearchTimeoutException when it runs past its time budget.
+ */
+public final class Query {
+    public static final String STATUS = "status";
+    public static final String AFTER = "after";
+    public static final String FROM = "from";
+    public static final String BEFORE = "before";
+
+    private static final DateTimeFormatter MINUTE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    private static final DateTimeFormatter SECOND_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final long INVALID_TIME = Long.MIN_VALUE;
+    private static final int REGEX_CHUNK_SIZE = 2048;
+    // deadline of the query the thread is evaluating, in System.nanoTime() terms
+    private static final ThreadLocal<Long> deadline = new ThreadLocal<>();
+
+    private final Node root;
+
+    private Query(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Compiles a query, an empty or blank text matches every row.
+     */
+    public static Query compile(String text) {
+        return new Query(text == null ? new MatchAll() : new QueryParser(text).parse());
+    }
+
+    /**
+     * @return a query holding a single field:value clause, value being taken literally,
+     * an empty value matches every row
+     */
+    public static Query field(String field, String value) {
+        if (value == null || value.isEmpty()) {
+            return new Query(new MatchAll());
+        }
+        return new Query(clause(field, value, field + ":" + value));
+    }
+
+    /**
+     * @return a query holding a single field~pattern clause, the time filters matching the timestamp text
+     */
+    public static Query regex(String field, String pattern) {
+        return new Query(regexClause(field, pattern));
+    }
+
+    /**
+     * @return a query matching the rows matched by every given query
+     */
+    public static Query allOf(List<Query> queries) {
+        List<Node> nodes = new ArrayList<>();
+        for (Query query : queries) {
+            nodes.add(query.root);
+        }
+        return new Query(and(nodes));
+    }
+
+    /**
+     * @return the rows of the target matching the query
+     */
+    public BitSet matchingRows(SearchTarget target) {
+        if (root.indexable(target)) {
+            return root.index(target).toBitSet(target.rowCount());
+        }
+        BitSet candidates = new BitSet(target.rowCount());
+        candidates.set(0, target.rowCount());
+        root.refine(target, candidates);
+        return candidates;
+    }
+
+    /**
+     * Same as matchingRows, but gives up with a SearchTimeoutException after the time budget.
+     */
+    public BitSet matchingRows(SearchTarget target, long timeBudgetMillis) {
+        deadline.set(System.nanoTime() + timeBudgetMillis * 1_000_000);
+        try {
+            return matchingRows(target);
+        } finally {
+            deadline.remove();
+        }
+    }
+
+    public boolean matchesAll() {
+        return root instanceof MatchAll;
+    }
+
+    static Node and(List<Node> nodes) {
+        List<Node> clauses = new ArrayList<>();
+        for (Node node : nodes) {
+            if (!(node instanceof MatchAll)) {
+                clauses.add(node);
+            }
+        }
+        if (clauses.isEmpty()) {
+            return new MatchAll();
+        }
+        if (clauses.size() == 1) {
+            return clauses.get(0);
+        }
+        clauses.sort(Comparator.comparingInt(Node::cost));
+        return new And(clauses);
+    }
+
+    static Node or(List<Node> nodes) {
+        return nodes.size() == 1 ? nodes.get(0) : new Or(nodes);
+    }
+
+    static Node not(Node node) {
+        return new Not(node);
+    }
+
+    static Node anyText(String text) {
+        return text.isEmpty() ? new MatchAll() : new AnyContains(text);
+    }
+
+    /**
+     * @param raw: the clause as typed, searched as plain text when the field is unknown to the view
+     */
+    static Node clause(String field, String value, String raw) {
+        switch (field) {
+            case STATUS:
+                return StatusMatch.parse(value);
+            case AFTER:
+                return new TimeBound(parseTime(value), TimeBound.AFTER);
+            case FROM:
+                return new TimeBound(parseTime(value), TimeBound.FROM);
+            case BEFORE:
+                return new TimeBound(parseTime(value), TimeBound.BEFORE);
+            case SearchColumns.IP:
+                IpRanges ranges = IpRanges.parse(value);
+                if (ranges != null) {
+                    return new IpInRange(ranges, raw);
+                }
+                return new ColumnContains(field, value, raw);
+            default:
+                return new ColumnContains(field, value, raw);
+        }
+    }
+
+    /**
+     * @param field: the column to match, or null for any text column
+     */
+    static Node regexClause(String field, String pattern) {
+        String column = field;
+        if (AFTER.equals(field) || FROM.equals(field) || BEFORE.equals(field)) {
+            column = SearchColumns.TIMESTAMP;
+        }
+        try {
+            return new RegexMatch(column, Regex.compile(pattern));
+        } catch (IllegalArgumentException e) {
+            return new RegexMatch(column, null);
+        }
+    }
+
+    /**
+     * @return the typed time as a wall-clock time, see TimestampDecoder.toLocalEpochMillis
+     */
+    private static long parseTime(String value) {
+        try {
+            if (value.length() == 10) {
+                return LocalDate.parse(value).toEpochDay() * 86_400_000L;
+            }
+            DateTimeFormatter formatter = value.length() > 16 ? SECOND_FORMATTER : MINUTE_FORMATTER;
+            return LocalDateTime.parse(value, formatter).toInstant(ZoneOffset.UTC).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return INVALID_TIME;
+        }
+    }
+
+    abstract static class Node {
+        /**
+         * Clears from candidates the rows that do not match.
+         */
+        abstract void refine(SearchTarget target, BitSet candidates);
+
+        /**
+         * Relative cost of refining a row, used to order the clauses of an AND.
+         */
+        abstract int cost();
+
+        /**
+         * @return whether index() can answer the node from bitmap indexes, without visiting rows
+         */
+        boolean indexable(SearchTarget target) {
+            return false;
+        }
+
+        /**
+         * @return the matching rows, only called when indexable() is true
+         */
+        RoaringBitmap index(SearchTarget target) {
+            throw new UnsupportedOperationException("Not answerable from an index");
+        }
+    }
+
+    private static final class MatchAll extends Node {
+        @Override
+        void refine(SearchTarget target, BitSet candidates) {
+            // every row matches
+        }
+
+        @Override
+        int cost() {
+            return 0;
+        }
+
+        @Override
+        boolean indexable(SearchTarget target) {
+            return true;
+        }
+
+        @Override
+        RoaringBitmap index(SearchTarget target) {
+            return RoaringBitmap.range(0, target.rowCount());
+        }
+    }
+
+    private static final class And extends Node {
+        private final List<Node> clauses;
+
+        And(List<Node> clauses) {
+            this.clauses = clauses;
+        }
+
+        @Override
+        void refine(SearchTarget target, BitSet candidates) {
+            RoaringBitmap indexed = null;
+            List<Node> remaining = new ArrayList<>();
+            for (Node clause : clauses) {
+                if (clause.indexable(target)) {
+                    indexed = indexed == null ? clause.index(target) : indexed.and(clause.index(target));
+                } else {
+                    remaining.add(clause);
+                }
+            }
+            if (indexed != null) {
+                candidates.and(indexed.toBitSet(target.rowCount()));
+            }
+            for (Node clause : remaining) {
+                if (candidates.isEmpty()) {
+                    return;
+                }
+                clause.refine(target, candidates);
+            }
+        }
+
+        @Override
+        int cost() {
+            return clauses.stream().mapToInt(Node::cost).sum();
+        }
+
+        @Override
+        boolean indexable(SearchTarget target) {
+            return clauses.stream().allMatch(clause -> clause.indexable(target));
+        }
+
+        @Override
+        RoaringBitmap index(SearchTarget target) {
+            RoaringBitmap rows = clauses.get(0).index(target);
+            for (int i = 1; i < clauses.size() && !rows.isEmpty(); i++) {
+                rows = rows.and(clauses.get(i).index(target));
+            }
+            return rows;
+        }
+    }
+
+    private static final class Or extends Node {
+        private final List<Node> alternatives;
+
+        Or(List<Node> alternatives) {
+            this.alternatives = alternatives;
+        }
+
+        @Override
+        void refine(SearchTarget target, BitSet candidates) {
+            BitSet remaining = (BitSet) candidates.clone();
+            BitSet matched = new BitSet(target.rowCount());
+            for (Node alternative : alternatives) {
+                if (remaining.isEmpty()) {
+                    break;
+                }
+                BitSet kept = (BitSet) remaining.clone();
+                alternative.refine(target, kept);
+                matched.or(kept);
+                // rows already matched need not be tested by the next alternatives
+                remaining.andNot(kept);
+            }
+            candidates.and(matched);
+        }
+
+        @Override
+        int cost() {
+            return alternatives.stream().mapToInt(Node::cost).sum();
+        }
+
+        @Override
+        boolean indexable(SearchTarget target) {
+            return alternatives.stream().allMatch(alternative -> alternative.indexable(target));
+        }
+
+        @Override
+        RoaringBitmap index(SearchTarget target) {
+            RoaringBitmap rows = new RoaringBitmap();
+            for (Node alternative : alternatives) {
+                rows = rows.or(alternative.index(target));
+            }
+            return rows;
+        }
+    }
+
+    private static final class Not extends Node {
+        private final Node negated;
+
+        Not(Node negated) {
+            this.negated = negated;
+        }
+
+        @Override
+        void refine(SearchTarget target, BitSet candidates) {
+            BitSet matched = (BitSet) candidates.clone();
+            negated.refine(target, matched);
+            candidates.andNot(matched);
+        }
+
+        @Override
+        int cost() {
+            return negated.cost() + 1;
+        }
+
+        @Override
+        boolean indexable(SearchTarget target) {
+            return negated.indexable(target);
+        }
+
+        @Override
+        RoaringBitmap index(SearchTarget target) {
+            return RoaringBitmap.range(0, target.rowCount()).andNot(negated.index(target));
+        }
+    }
+
+    private static final class StatusMatch extends Node {
+        private final int lowerBound;
+        private final int upperBound;
+        private final String digits;
+
+        private StatusMatch(int lowerBound, int upperBound, String digits) {
+            this.lowerBound = lowerBound;
+            this.upperBound = upperBound;
+            this.digits = digits;
+        }
+
+        /**
+         * "404" or "40" match status codes containing the digits, "400-499" a range, "4xx" a class.
+         */
+        static StatusMatch parse(String value) {
+            String text = value.trim().toLowerCase();
+            if (text.length() == 3 && text.endsWith("xx") && Character.isDigit(text.charAt(0))) {
+                int statusClass = text.charAt(0) - '0';
+                return new StatusMatch(statusClass * 100, statusClass * 100 + 99, null);
+            }
+            int dash = text.indexOf('-');
+            try {
+                if (dash > 0) {
+                    return new StatusMatch(Integer.parseInt(text.substring(0, dash)),
+                            Integer.parseInt(text.substring(dash + 1)), null);
+                }
+                Integer.parseInt(text);
+            } catch (NumberFormatException e) {
+                // nothing can match an unreadable status
+                return new StatusMatch(1, 0, null);
+            }
+            return new StatusMatch(Integer.MIN_VALUE, Integer.MAX_VALUE, text);
+        }
+
+        @Override
+        void refine(SearchTarget target, BitSet candidates) {
+            candidates.and(index(target).toBitSet(target.rowCount()));
+        }
+
+        @Override
+        int cost() {
+            return 1;
+        }
+
+        @Override
+        boolean indexable(SearchTarget target) {
+            return true;
+        }
+
+        @Override
+        RoaringBitmap index(SearchTarget target) {
+            if (digits != null) {
+                return target.statusIndex().rowsMatching(status -> Integer.toString(status).contains(digits));
+            }
+            if (lowerBound >= 0 && lowerBound % 100 == 0 && upperBound == lowerBound + 99) {
+                // "4xx" or "400-499", a drill-down from the dashboard
+                return target.statusClassIndex().rowsWith(lowerBound / 100);
+            }
+            return target.statusIndex().rowsMatching(status -> status >= lowerBound && status <= upperBound);
+        }
+    }
+
+    /**
+     * Compares the time printed in the log, whatever its zone offset, with a typed time.
+     */
+    private static final class TimeBound extends Node {
+        static final int AFTER = 0;
+        static final int FROM = 1;
+        static final int BEFORE = 2;
+        private static final long MINUTE_MILLIS = 60_000L;
+
+        private final long bound;
+        private final int direction;
+
+        /**
+         * @param bound: wall-clock time, see TimestampDecoder.toLocalEpochMillis
+         */
+        TimeBound(long bound, int direction) {
+            this.bound = bound;
+            this.direction = direction;
+        }
+
+        @Override
+        void refine(SearchTarget target, BitSet candidates) {
+            candidates.and(index(target).toBitSet(target.rowCount()));
+        }
+
+        @Override
+        int cost() {
+            return 0;
+        }
+
+        @Override
+        boolean indexable(SearchTarget target) {
+            return true;
+        }
+
+        @Override
+        RoaringBitmap index(SearchTarget target) {
+            if (bound == INVALID_TIME) {
+                return new RoaringBitmap();
+            }
+            return switch (direction) {
+                case AFTER -> rowsAtOrAfter(target, bound + 1);
+                case FROM -> rowsAtOrAfter(target, bound);
+                default -> RoaringBitmap.range(0, target.rowCount()).andNot(rowsAtOrAfter(target, bound));
+            };
+        }
+
+        /**
+         * Rows are in order of their instant, the printed time of a row being its instant plus its offset.
+         * Rows before the bound in the largest offset are all earlier, rows after it in the smallest
+         * offset all later, only the rows in between are checked one by one. A day printed in a
+         * single offset has none.
+         * @return the rows whose printed time is at or after the wall-clock time
+         */
+        private static RoaringBitmap rowsAtOrAfter(SearchTarget target, long wallClock) {
+            int first = target.firstRowAtOrAfter(wallClock - target.maxOffsetMinutes() * MINUTE_MILLIS);
+            int certain = target.firstRowAtOrAfter(wallClock - target.minOffsetMinutes() * MINUTE_MILLIS);
+            RoaringBitmap rows = new RoaringBitmap();
+            for (int row = first; row < certain; row++) {
+                checkCancelled(row);
+                if (target.epochMillis(row) + target.offsetMinutes(row) * MINUTE_MILLIS >= wallClock) {
+                    rows.add(row);
+                }
+            }
+            return rows.or(RoaringBitmap.range(certain, target.rowCount()));
+        }
+    }
+
+    private static final class ColumnContains extends Node {
+        private final String column;
+        private final String text;
+        private final String raw;
+
+        ColumnContains(String column, String text, String raw) {
+            this.column = column;
+            this.text = text;
+            this.raw = raw;
+        }
+
+        @Override
+        void refine(SearchTarget target, BitSet candidates) {
+            TextColumns columns = target.textColumns();
+            int position = columns.columnOf(column);
+            if (position < 0) {
+                new AnyContains(raw).refine(target, candidates);
+                return;
+            }
+            keepRowsWithValues(columns, position, columns.valuesContaining(position, text), candidates);
+        }
+
+        @Override
+        int cost() {
+            return 3;
+        }
+
+        @Override
+        boolean indexable(SearchTarget target) {
+            TextColumns columns = target.textColumns();
+            int position = columns.columnOf(column);
+            return position >= 0 && columns.isLowCardinality(position);
+        }
+
+        @Override
+        RoaringBitmap index(SearchTarget target) {
+            TextColumns columns = target.textColumns();
+            int position = columns.columnOf(column);
+            return columns.rowsWithValues(position, columns.valuesContaining(position, text));
+        }
+    }
+
+    private static final class IpInRange extends Node {
+        private final IpRanges ranges;
+        private final String raw;
+
+        IpInRange(IpRanges ranges, String raw) {
+            this.ranges = ranges;
+            this.raw = raw;
+        }
+
+        @Override
+        void refine(SearchTarget target, BitSet candidates) {
+            TextColumns columns = target.textColumns();
+            int position = columns.columnOf(SearchColumns.IP);
+            if (position < 0) {
+                new AnyContains(raw).refine(target, candidates);
+                return;
+            }
+            keepRowsWithValues(columns, position, matchingIds(columns, position), candidates);
+        }
+
+        private BitSet matchingIds(TextColumns columns, int position) {
+            return columns.valuesInRanges(position, ranges);
+        }
+
+        @Override
+        int cost() {
+            return 3;
+        }
+
+        @Override
+        boolean indexable(SearchTarget target) {
+            TextColumns columns = target.textColumns();
+            int position = columns.columnOf(SearchColumns.IP);
+            return position >= 0 && columns.isLowCardinality(position);
+        }
+
+        @Override
+        RoaringBitmap index(SearchTarget target) {
+            TextColumns columns = target.textColumns();
+            int position = columns.columnOf(SearchColumns.IP);
+            return columns.rowsWithValues(position, matchingIds(columns, position));
+        }
+    }
+
+    private static final class AnyContains extends Node {
+        private final String text;
+
+        AnyContains(String text) {
+            this.text = text;
+        }
+
+        @Override
+        void refine(SearchTarget target, BitSet candidates) {
+            TextColumns columns = target.textColumns();
+            int columnCount = columns.columnCount();
+            BitSet[] matchingIds = new BitSet[columnCount];
+            for (int column = 0; column < columnCount; column++) {
+                matchingIds[column] = columns.isAnyColumn(column) ? columns.valuesContaining(column, text) : new BitSet();
+            }
+            keepRowsWithAnyValue(columns, matchingIds, candidates);
+        }
+
+        @Override
+        int cost() {
+            return 5;
+        }
+    }
+
+    private static final class RegexMatch extends Node {
+        private final String column;
+        private final Regex regex;
+
+        /**
+         * @param column: the column to match, null for any text column
+         * @param regex: null when the pattern did not compile, nothing matches then
+         */
+        RegexMatch(String column, Regex regex) {
+            this.column = column;
+            this.regex = regex;
+        }
+
+        @Override
+        void refine(SearchTarget target, BitSet candidates) {
+            if (regex == null || STATUS.equals(column)) {
+                candidates.and(index(target).toBitSet(target.rowCount()));
+                return;
+            }
+            TextColumns columns = target.textColumns();
+            int position = column == null ? -1 : columns.columnOf(column);
+            if (position >= 0) {
+                keepRowsWithValues(columns, position, matchingIds(regex, columns, position), candidates);
+                return;
+            }
+            BitSet[] matchingIds = new BitSet[columns.columnCount()];
+            for (int each = 0; each < matchingIds.length; each++) {
+                matchingIds[each] = columns.isAnyColumn(each) ? matchingIds(regex, columns, each) : new BitSet();
+            }
+            keepRowsWithAnyValue(columns, matchingIds, candidates);
+        }
+
+        @Override
+        int cost() {
+            return column == null ? 6 : 4;
+        }
+
+        @Override
+        boolean indexable(SearchTarget target) {
+            if (regex == null || STATUS.equals(column)) {
+                return true;
+            }
+            TextColumns columns = target.textColumns();
+            int position = column == null ? -1 : columns.columnOf(column);
+            return position >= 0 && columns.isLowCardinality(position);
+        }
+
+        @Override
+        RoaringBitmap index(SearchTarget target) {
+            if (regex == null) {
+                return new RoaringBitmap();
+            }
+            if (STATUS.equals(column)) {
+                Regex.Matcher matcher = regex.matcher();
+                return target.statusIndex().rowsMatching(status -> matcher.find(Integer.toString(status)));
+            }
+            TextColumns columns = target.textColumns();
+            int position = columns.columnOf(column);
+            return columns.rowsWithValues(position, matchingIds(regex, columns, position));
+        }
+    }
+
+    /**
+     * Runs the regex on the distinct values of the column, split in chunks matched in parallel.
+     * Each worker thread builds its own DFA, and checks the cancellation and the deadline of the
+     * thread evaluating the query.
+     */
+    private static BitSet matchingIds(Regex regex, TextColumns columns, int column) {
+        StringDictionary dictionary = columns.dictionary(column);
+        int[] candidates;
+        if (regex.requiredLiterals() != null) {
+            BitSet withLiteral = new BitSet();
+            for (String literal : regex.requiredLiterals()) {
+                withLiteral.or(columns.valuesContaining(column, literal));
+            }
+            candidates = withLiteral.stream().toArray();
+        } else {
+            candidates = IntStream.range(0, dictionary.size()).toArray();
+        }
+        Thread caller = Thread.currentThread();
+        Long callerDeadline = deadline.get();
+        ThreadLocal<Regex.Matcher> matchers = ThreadLocal.withInitial(regex::matcher);
+        int chunks = (candidates.length + REGEX_CHUNK_SIZE - 1) / REGEX_CHUNK_SIZE;
+        return IntStream.range(0, chunks).parallel().mapToObj(chunk -> {
+            checkBudget(caller, callerDeadline);
+            Regex.Matcher matcher = matchers.get();
+            BitSet matching = new BitSet();
+            int end = Math.min(candidates.length, (chunk + 1) * REGEX_CHUNK_SIZE);
+            for (int i = chunk * REGEX_CHUNK_SIZE; i < end; i++) {
+                if (matcher.find(dictionary.valueOf(candidates[i]))) {
+                    matching.set(candidates[i]);
+                }
+            }
+            return matching;
+        }).reduce(new BitSet(), (left, right) -> {
+            BitSet union = (BitSet) left.clone();
+            union.or(right);
+            return union;
+        });
+    }
+
+    /**
+     * Lets a search running in a background task stop soon after the task was cancelled.
+     */
+    static void checkCancelled(int row) {
+        if ((row & 0xFFFF) == 0) {
+            checkBudget(Thread.currentThread(), deadline.get());
+        }
+    }
+
+    private static void checkBudget(Thread caller, Long callerDeadline) {
+        if (caller.isInterrupted()) {
+            throw new CancellationException("Search cancelled");
+        }
+        if (callerDeadline != null && System.nanoTime() - callerDeadline > 0) {
+            throw new SearchTimeoutException("The search took longer than its time budget and was stopped.");
+        }
+    }
+
+    private static void keepRowsWithAnyValue(TextColumns columns, BitSet[] matchingIds, BitSet candidates) {
+        for (int row = candidates.nextSetBit(0); row >= 0; row = candidates.nextSetBit(row + 1)) {
+            checkCancelled(row);
+            boolean matches = false;
+            for (int column = 0; column < matchingIds.length && !matches; column++) {
+                matches = matchingIds[column].get(columns.valueId(column, row));
+            }
+            if (!matches) {
+                candidates.clear(row);
+            }
+        }
+    }
+
+    private static void keepRowsWithValues(TextColumns columns, int column, BitSet matchingIds, BitSet candidates) {
+        if (matchingIds.isEmpty()) {
+            candidates.clear();
+            return;
+        }
+        for (int row = candidates.nextSetBit(0); row >= 0; row = candidates.nextSetBit(row + 1)) {
+            checkCancelled(row);
+            if (!matchingIds.get(columns.valueId(column, row))) {
+                candidates.clear(row);
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Recursive-descent parser of the search syntax described in Query.
+ * The parser never fails: unbalanced parentheses are ignored and an unterminated quote runs to
+ * the end of the text, so whatever the analyst typed still compiles to something searchable.
+ */
+final class QueryParser {
+    private final String text;
+    private int position;
+
+    QueryParser(String text) {
+        this.text = text;
+    }
+
+    Query.Node parse() {
+        List<Query.Node> parts = new ArrayList<>();
+        parts.add(parseOr());
+        while (skipWhitespace()) {
+            // a stray closing parenthesis, skip it and keep going
+            position++;
+            parts.add(parseOr());
+        }
+        return Query.and(parts);
+    }
+
+    private Query.Node parseOr() {
+        List<Query.Node> alternatives = new ArrayList<>();
+        alternatives.add(parseAnd());
+        while (consumeOr()) {
+            alternatives.add(parseAnd());
+        }
+        return Query.or(alternatives);
+    }
+
+    private Query.Node parseAnd() {
+        List<Query.Node> clauses = new ArrayList<>();
+        while (skipWhitespace() && text.charAt(position) != ')' && !atOr()) {
+            clauses.add(parseUnary());
+        }
+        return Query.and(clauses);
+    }
+
+    private Query.Node parseUnary() {
+        char c = text.charAt(position);
+        if (c == '-' && position + 1 < text.length() && !Character.isWhitespace(text.charAt(position + 1))) {
+            position++;
+            return Query.not(parseUnary());
+        }
+        if (c == '(') {
+            position++;
+            Query.Node group = parseOr();
+            if (skipWhitespace() && text.charAt(position) == ')') {
+                position++;
+            }
+            return group;
+        }
+        return parseTerm();
+    }
+
+    private Query.Node parseTerm() {
+        int start = position;
+        while (position < text.length() && isFieldChar(text.charAt(position))) {
+            position++;
+        }
+        if (position > start && position < text.length() && text.charAt(position) == ':') {
+            String field = text.substring(start, position).toLowerCase();
+            position++;
+            String value = readValue();
+            return Query.clause(field, value, field + ":" + value);
+        }
+        if (position < text.length() && text.charAt(position) == '~' && position + 1 < text.length()) {
+            // field~pattern, or ~pattern for any column
+            String field = position > start ? text.substring(start, position).toLowerCase() : null;
+            position++;
+            return Query.regexClause(field, readPattern());
+        }
+        position = start;
+        return Query.anyText(readValue());
+    }
+
+    /**
+     * Reads a "quoted value", where \" and \\ are escapes, or a bare word.
+     */
+    private String readValue() {
+        if (position < text.length() && text.charAt(position) == '"') {
+            position++;
+            StringBuilder value = new StringBuilder();
+            while (position < text.length() && text.charAt(position) != '"') {
+                char c = text.charAt(position);
+                if (c == '\\' && position + 1 < text.length()) {
+                    c = text.charAt(++position);
+                }
+                value.append(c);
+                position++;
+            }
+            position++;
+            return value.toString();
+        }
+        int start = position;
+        while (position < text.length() && !Character.isWhitespace(text.charAt(position))
+                && text.charAt(position) != ')') {
+            position++;
+        }
+        return text.substring(start, position);
+    }
+
+    /**
+     * Reads a "quoted pattern", where only \" is an escape so the regex keeps its backslashes,
+     * or a bare pattern up to whitespace or a closing parenthesis it did not open.
+     */
+    private String readPattern() {
+        StringBuilder pattern = new StringBuilder();
+        if (position < text.length() && text.charAt(position) == '"') {
+            position++;
+            while (position < text.length() && text.charAt(position) != '"') {
+                char c = text.charAt(position);
+                if (c == '\\' && position + 1 < text.length() && text.charAt(position + 1) == '"') {
+                    c = text.charAt(++position);
+                } else if (c == '\\' && position + 1 < text.length()) {
+                    pattern.append(c);
+                    c = text.charAt(++position);
+                }
+                pattern.append(c);
+                position++;
+            }
+            position++;
+            return pattern.toString();
+        }
+        int depth = 0;
+        while (position < text.length() && !Character.isWhitespace(text.charAt(position))) {
+            char c = text.charAt(position);
+            if (c == ')' && depth == 0) {
+                break;
+            }
+            if (c == '\\' && position + 1 < text.length()) {
+                pattern.append(c);
+                c = text.charAt(++position);
+            } else {
+                depth += c == '(' ? 1 : c == ')' ? -1 : 0;
+            }
+            pattern.append(c);
+            position++;
+        }
+        return pattern.toString();
+    }
+
+    private boolean consumeOr() {
+        if (!skipWhitespace() || !atOr()) {
+            return false;
+        }
+        position += text.charAt(position) == '|' ? 1 : 2;
+        return true;
+    }
+
+    private boolean atOr() {
+        if (text.charAt(position) == '|') {
+            return true;
+        }
+        int end = position + 2;
+        return text.startsWith("OR", position)
+                && (end == text.length() || Character.isWhitespace(text.charAt(end)) || text.charAt(end) == '(');
+    }
+
+    /**
+     * @return true when there is still something to read
+     */
+    private boolean skipWhitespace() {
+        while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+        return position < text.length();
+    }
+
+    private static boolean isFieldChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+}
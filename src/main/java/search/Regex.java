@@ -0,0 +1,788 @@
+package search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Regular expressions matched in time linear in the length of the text, whatever the pattern.
+ * The pattern is compiled once into a Thompson NFA, which Matchers run as a DFA built lazily,
+ * one DFA state per set of NFA states reached, so nothing ever backtracks.
+ * Supported: literals and escapes, . [classes] \d \w \s and their negations, groups, |,
+ * * + ? {n} {n,} {n,m} (lazy forms are accepted and match the same rows), ^ $ \A \z, and a
+ * leading (?i) for case-insensitive matching. Backreferences, lookarounds and \b need
+ * backtracking and are rejected.
+ * A Regex is immutable and can be shared, a Matcher holds the DFA built so far and is not.
+ */
+public final class Regex {
+    private static final int MAX_REPEAT = 1000;
+    private static final int MAX_NFA_STATES = 20_000;
+    private static final int MAX_DFA_STATES = 4096;
+    private static final int ASCII = 128;
+    private static final int MAX_CHAR = Character.MAX_VALUE;
+    private static final int MIN_LITERAL_LENGTH = 3;
+
+    // kinds of NFA states
+    private static final int MATCH = 0;
+    private static final int CHARS = 1;
+    private static final int SPLIT = 2;
+    private static final int BEGIN = 3;
+    private static final int END = 4;
+
+    private final String pattern;
+    private final int[] kinds;
+    private final int[] nexts;
+    private final int[][] splits;
+    private final int[][] ranges;
+    private final int start;
+    private final List<String> requiredLiterals;
+
+    private Regex(String pattern, Compiler compiler, int start, List<String> requiredLiterals) {
+        this.pattern = pattern;
+        int size = compiler.kinds.size();
+        this.kinds = new int[size];
+        this.nexts = new int[size];
+        this.splits = new int[size][];
+        this.ranges = new int[size][];
+        for (int state = 0; state < size; state++) {
+            kinds[state] = compiler.kinds.get(state);
+            nexts[state] = compiler.nexts.get(state);
+            splits[state] = compiler.splits.get(state);
+            ranges[state] = compiler.ranges.get(state);
+        }
+        this.start = start;
+        this.requiredLiterals = requiredLiterals;
+    }
+
+    /**
+     * @throws IllegalArgumentException when the pattern is invalid or needs backtracking
+     */
+    public static Regex compile(String pattern) {
+        Parser parser = new Parser(pattern);
+        Term term = parser.parse();
+        Compiler compiler = new Compiler();
+        int match = compiler.add(MATCH, -1, null, null);
+        int start = compiler.compile(term, match);
+        if (!anchoredAtBegin(term)) {
+            // unanchored search: a loop over any character in front of the pattern
+            int loop = compiler.add(SPLIT, -1, null, null);
+            int anyChar = compiler.add(CHARS, loop, null, new int[] {0, MAX_CHAR});
+            compiler.splits.set(loop, new int[] {anyChar, start});
+            start = loop;
+        }
+        List<String> literals = parser.caseInsensitive ? null : best(literalsOf(term).required, null);
+        if (literals != null && shortest(literals) < MIN_LITERAL_LENGTH) {
+            literals = null;
+        }
+        return new Regex(pattern, compiler, start, literals);
+    }
+
+    public String pattern() {
+        return pattern;
+    }
+
+    /**
+     * @return strings at least one of which every matching text contains, for a substring
+     *         pre-filter through the trigram indexes, or null when the pattern has none useful
+     */
+    public List<String> requiredLiterals() {
+        return requiredLiterals;
+    }
+
+    public Matcher matcher() {
+        return new Matcher();
+    }
+
+    /**
+     * Runs the DFA, adding its states as they are first reached. When there are too many of
+     * them the cache is dropped and rebuilt, so memory stays bounded on pathological patterns.
+     */
+    public final class Matcher {
+        private static final int START = 0;
+        private static final int UNKNOWN = -1;
+
+        private final Map<StateSet, Integer> ids = new HashMap<>();
+        private final List<int[]> sets = new ArrayList<>();
+        private final List<int[]> asciiTransitions = new ArrayList<>();
+        private final List<Boolean> accepting = new ArrayList<>();
+        private final List<Boolean> acceptingAtEnd = new ArrayList<>();
+        private final int[] startSet;
+
+        private Matcher() {
+            startSet = closure(new int[] {start}, true, false);
+            intern(startSet);
+        }
+
+        /**
+         * @return whether the pattern matches somewhere in the text
+         */
+        public boolean find(CharSequence text) {
+            int state = START;
+            int length = text.length();
+            if (length == 0) {
+                // both the beginning and the end of the text, in any order
+                for (int nfaState : closure(startSet, true, true)) {
+                    if (kinds[nfaState] == MATCH) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (accepting.get(state)) {
+                    return true;
+                }
+                if (sets.get(state).length == 0) {
+                    return false;
+                }
+                char c = text.charAt(i);
+                if (c < ASCII) {
+                    int[] transitions = asciiTransitions.get(state);
+                    int next = transitions[c];
+                    if (next == UNKNOWN) {
+                        next = step(state, c);
+                        // interning may have dropped the cache, the row is refilled lazily then
+                        if (asciiTransitions.size() > state && asciiTransitions.get(state) == transitions) {
+                            transitions[c] = next;
+                        }
+                    }
+                    state = next;
+                } else {
+                    state = step(state, c);
+                }
+            }
+            return accepting.get(state) || acceptingAtEnd.get(state);
+        }
+
+        private int step(int state, char c) {
+            int[] set = sets.get(state);
+            int[] reached = new int[set.length];
+            int count = 0;
+            for (int nfaState : set) {
+                if (kinds[nfaState] == CHARS && inRanges(ranges[nfaState], c)) {
+                    reached[count++] = nexts[nfaState];
+                }
+            }
+            return intern(closure(Arrays.copyOf(reached, count), false, false));
+        }
+
+        private int intern(int[] set) {
+            StateSet key = new StateSet(set);
+            Integer id = ids.get(key);
+            if (id != null) {
+                return id;
+            }
+            if (sets.size() >= MAX_DFA_STATES) {
+                ids.clear();
+                sets.clear();
+                asciiTransitions.clear();
+                accepting.clear();
+                acceptingAtEnd.clear();
+                if (set != startSet) {
+                    intern(startSet);
+                }
+            }
+            int newId = sets.size();
+            ids.put(key, newId);
+            sets.add(set);
+            int[] transitions = new int[ASCII];
+            Arrays.fill(transitions, UNKNOWN);
+            asciiTransitions.add(transitions);
+            boolean matches = false;
+            for (int nfaState : set) {
+                matches |= kinds[nfaState] == MATCH;
+            }
+            accepting.add(matches);
+            boolean matchesAtEnd = false;
+            for (int nfaState : closure(set, false, true)) {
+                matchesAtEnd |= kinds[nfaState] == MATCH;
+            }
+            acceptingAtEnd.add(matchesAtEnd);
+            return newId;
+        }
+    }
+
+    /**
+     * Follows the SPLIT and passing assertion states.
+     * @return the sorted states consuming a character, the MATCH state and the END assertions
+     *         that could not be passed yet
+     */
+    private int[] closure(int[] states, boolean atBegin, boolean atEnd) {
+        boolean[] visited = new boolean[kinds.length];
+        int[] stack = new int[kinds.length];
+        int[] result = new int[kinds.length];
+        int depth = 0;
+        int count = 0;
+        for (int state : states) {
+            if (!visited[state]) {
+                visited[state] = true;
+                stack[depth++] = state;
+            }
+        }
+        while (depth > 0) {
+            int state = stack[--depth];
+            int[] targets;
+            switch (kinds[state]) {
+                case SPLIT -> targets = splits[state];
+                case BEGIN -> targets = atBegin ? new int[] {nexts[state]} : new int[0];
+                case END -> {
+                    if (!atEnd) {
+                        result[count++] = state;
+                    }
+                    targets = atEnd ? new int[] {nexts[state]} : new int[0];
+                }
+                default -> {
+                    result[count++] = state;
+                    targets = new int[0];
+                }
+            }
+            for (int target : targets) {
+                if (!visited[target]) {
+                    visited[target] = true;
+                    stack[depth++] = target;
+                }
+            }
+        }
+        int[] sorted = Arrays.copyOf(result, count);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static boolean inRanges(int[] ranges, char c) {
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (c < ranges[i]) {
+                return false;
+            }
+            if (c <= ranges[i + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean anchoredAtBegin(Term term) {
+        if (term instanceof Assertion assertion) {
+            return assertion.kind() == BEGIN;
+        }
+        if (term instanceof Concat concat) {
+            return !concat.parts().isEmpty() && anchoredAtBegin(concat.parts().get(0));
+        }
+        if (term instanceof Alternation alternation) {
+            return alternation.alternatives().stream().allMatch(Regex::anchoredAtBegin);
+        }
+        return false;
+    }
+
+    private record StateSet(int[] states) {
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof StateSet set && Arrays.equals(states, set.states);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(states);
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(states);
+        }
+    }
+
+    private interface Term {
+    }
+
+    /**
+     * A character out of sorted, disjoint [from, to] ranges, flattened.
+     */
+    private record Chars(int[] ranges) implements Term {
+    }
+
+    private record Concat(List<Term> parts) implements Term {
+    }
+
+    private record Alternation(List<Term> alternatives) implements Term {
+    }
+
+    private record Repeat(Term term, int min, int max) implements Term {
+    }
+
+    private record Assertion(int kind) implements Term {
+    }
+
+    /**
+     * Builds the NFA backwards: compiling a term gets the state following it and returns its first state.
+     */
+    private static final class Compiler {
+        private final List<Integer> kinds = new ArrayList<>();
+        private final List<Integer> nexts = new ArrayList<>();
+        private final List<int[]> splits = new ArrayList<>();
+        private final List<int[]> ranges = new ArrayList<>();
+
+        int add(int kind, int next, int[] split, int[] charRanges) {
+            if (kinds.size() >= MAX_NFA_STATES) {
+                throw new IllegalArgumentException("Pattern is too large");
+            }
+            kinds.add(kind);
+            nexts.add(next);
+            splits.add(split);
+            ranges.add(charRanges);
+            return kinds.size() - 1;
+        }
+
+        int compile(Term term, int next) {
+            if (term instanceof Chars chars) {
+                return add(CHARS, next, null, chars.ranges());
+            }
+            if (term instanceof Assertion assertion) {
+                return add(assertion.kind(), next, null, null);
+            }
+            if (term instanceof Concat concat) {
+                int first = next;
+                for (int i = concat.parts().size() - 1; i >= 0; i--) {
+                    first = compile(concat.parts().get(i), first);
+                }
+                return first;
+            }
+            if (term instanceof Alternation alternation) {
+                int[] targets = new int[alternation.alternatives().size()];
+                for (int i = 0; i < targets.length; i++) {
+                    targets[i] = compile(alternation.alternatives().get(i), next);
+                }
+                return add(SPLIT, -1, targets, null);
+            }
+            Repeat repeat = (Repeat) term;
+            int first = next;
+            if (repeat.max() < 0) {
+                int loop = add(SPLIT, -1, null, null);
+                splits.set(loop, new int[] {compile(repeat.term(), loop), next});
+                first = loop;
+            } else {
+                for (int i = repeat.min(); i < repeat.max(); i++) {
+                    first = add(SPLIT, -1, new int[] {compile(repeat.term(), first), next}, null);
+                }
+            }
+            for (int i = 0; i < repeat.min(); i++) {
+                first = compile(repeat.term(), first);
+            }
+            return first;
+        }
+    }
+
+    /**
+     * What a term tells about the text it matches.
+     * @param exact: the only string the term matches, or null
+     * @param required: strings one of which any text matched by the term contains, or null
+     */
+    private record Literals(String exact, List<String> required) {
+    }
+
+    private static Literals literalsOf(Term term) {
+        if (term instanceof Chars chars) {
+            int[] charRanges = chars.ranges();
+            if (charRanges.length == 2 && charRanges[0] == charRanges[1]) {
+                String exact = String.valueOf((char) charRanges[0]);
+                return new Literals(exact, List.of(exact));
+            }
+            return new Literals(null, null);
+        }
+        if (term instanceof Assertion) {
+            return new Literals("", null);
+        }
+        if (term instanceof Concat concat) {
+            StringBuilder run = new StringBuilder();
+            boolean allExact = true;
+            List<String> best = null;
+            for (Term part : concat.parts()) {
+                Literals literals = literalsOf(part);
+                if (literals.exact() != null) {
+                    run.append(literals.exact());
+                    continue;
+                }
+                allExact = false;
+                best = best(best, run.length() > 0 ? List.of(run.toString()) : null);
+                best = best(best, literals.required());
+                run.setLength(0);
+            }
+            best = best(best, run.length() > 0 ? List.of(run.toString()) : null);
+            return new Literals(allExact ? run.toString() : null, best);
+        }
+        if (term instanceof Alternation alternation) {
+            List<String> union = new ArrayList<>();
+            for (Term alternative : alternation.alternatives()) {
+                Literals literals = literalsOf(alternative);
+                List<String> required = best(literals.required(),
+                        literals.exact() != null && !literals.exact().isEmpty() ? List.of(literals.exact()) : null);
+                if (required == null) {
+                    return new Literals(null, null);
+                }
+                union.addAll(required);
+            }
+            return new Literals(null, union);
+        }
+        Repeat repeat = (Repeat) term;
+        if (repeat.min() == 0) {
+            return new Literals(null, null);
+        }
+        Literals literals = literalsOf(repeat.term());
+        if (literals.exact() != null && repeat.min() == repeat.max()) {
+            return new Literals(literals.exact().repeat(repeat.min()), literals.required());
+        }
+        return new Literals(null, literals.required());
+    }
+
+    /**
+     * @return the more selective of two literal sets, the one whose shortest string is longer
+     */
+    private static List<String> best(List<String> left, List<String> right) {
+        if (left == null || left.isEmpty()) {
+            return right;
+        }
+        if (right == null || right.isEmpty()) {
+            return left;
+        }
+        return shortest(right) > shortest(left) ? right : left;
+    }
+
+    private static int shortest(List<String> literals) {
+        return literals.stream().mapToInt(String::length).min().orElse(0);
+    }
+
+    /**
+     * Recursive-descent parser of the pattern into Terms.
+     */
+    private static final class Parser {
+        private final String pattern;
+        private int position;
+        private boolean caseInsensitive;
+
+        Parser(String pattern) {
+            this.pattern = pattern;
+        }
+
+        Term parse() {
+            if (pattern.startsWith("(?i)")) {
+                caseInsensitive = true;
+                position = 4;
+            }
+            Term term = parseAlternation();
+            if (position < pattern.length()) {
+                throw error("Unmatched )");
+            }
+            return term;
+        }
+
+        private Term parseAlternation() {
+            List<Term> alternatives = new ArrayList<>();
+            alternatives.add(parseConcat());
+            while (position < pattern.length() && pattern.charAt(position) == '|') {
+                position++;
+                alternatives.add(parseConcat());
+            }
+            return alternatives.size() == 1 ? alternatives.get(0) : new Alternation(alternatives);
+        }
+
+        private Term parseConcat() {
+            List<Term> parts = new ArrayList<>();
+            while (position < pattern.length() && pattern.charAt(position) != '|' && pattern.charAt(position) != ')') {
+                parts.add(parseRepeat());
+            }
+            return parts.size() == 1 ? parts.get(0) : new Concat(parts);
+        }
+
+        private Term parseRepeat() {
+            Term term = parseAtom();
+            while (position < pattern.length()) {
+                char c = pattern.charAt(position);
+                int min;
+                int max;
+                if (c == '*' || c == '+' || c == '?') {
+                    position++;
+                    min = c == '+' ? 1 : 0;
+                    max = c == '?' ? 1 : -1;
+                } else if (c == '{' && isQuantifier()) {
+                    int[] bounds = parseBounds();
+                    min = bounds[0];
+                    max = bounds[1];
+                } else {
+                    return term;
+                }
+                if (position < pattern.length() && pattern.charAt(position) == '?') {
+                    // lazy, the same rows match
+                    position++;
+                } else if (position < pattern.length() && pattern.charAt(position) == '+') {
+                    throw error("Possessive quantifiers are not supported");
+                }
+                if (term instanceof Assertion) {
+                    throw error("Nothing to repeat");
+                }
+                term = new Repeat(term, min, max);
+            }
+            return term;
+        }
+
+        private boolean isQuantifier() {
+            int end = pattern.indexOf('}', position);
+            return end > position + 1 && pattern.substring(position + 1, end).matches("\\d+(,\\d*)?");
+        }
+
+        private int[] parseBounds() {
+            int end = pattern.indexOf('}', position);
+            String[] bounds = pattern.substring(position + 1, end).split(",", -1);
+            position = end + 1;
+            try {
+                int min = Integer.parseInt(bounds[0]);
+                int max = bounds.length == 1 ? min : bounds[1].isEmpty() ? -1 : Integer.parseInt(bounds[1]);
+                if (min > MAX_REPEAT || max > MAX_REPEAT || (max >= 0 && max < min)) {
+                    throw error("Repetition bounds out of range");
+                }
+                return new int[] {min, max};
+            } catch (NumberFormatException e) {
+                throw error("Repetition bounds out of range");
+            }
+        }
+
+        private Term parseAtom() {
+            char c = pattern.charAt(position++);
+            switch (c) {
+                case '(':
+                    return parseGroup();
+                case '[':
+                    return parseClass();
+                case '.':
+                    return new Chars(new int[] {0, '\n' - 1, '\n' + 1, MAX_CHAR});
+                case '^':
+                    return new Assertion(BEGIN);
+                case '$':
+                    return new Assertion(END);
+                case '\\':
+                    return parseEscape(false);
+                case '*':
+                case '+':
+                case '?':
+                    throw error("Nothing to repeat");
+                default:
+                    return literal(c);
+            }
+        }
+
+        private Term parseGroup() {
+            if (pattern.startsWith("?:", position)) {
+                position += 2;
+            } else if (pattern.startsWith("?<", position) && position + 2 < pattern.length()
+                    && Character.isLetter(pattern.charAt(position + 2))) {
+                int end = pattern.indexOf('>', position);
+                if (end < 0) {
+                    throw error("Unterminated group name");
+                }
+                position = end + 1;
+            } else if (pattern.startsWith("?", position)) {
+                throw error("Lookarounds and inline flags other than a leading (?i) are not supported");
+            }
+            Term term = parseAlternation();
+            if (position >= pattern.length() || pattern.charAt(position) != ')') {
+                throw error("Unclosed group");
+            }
+            position++;
+            return term;
+        }
+
+        private Term parseClass() {
+            boolean negated = position < pattern.length() && pattern.charAt(position) == '^';
+            if (negated) {
+                position++;
+            }
+            List<int[]> members = new ArrayList<>();
+            boolean first = true;
+            while (true) {
+                if (position >= pattern.length()) {
+                    throw error("Unclosed character class");
+                }
+                char c = pattern.charAt(position++);
+                if (c == ']' && !first) {
+                    break;
+                }
+                first = false;
+                int from;
+                if (c == '\\') {
+                    Chars escaped = (Chars) parseEscape(true);
+                    if (escaped.ranges().length != 2 || escaped.ranges()[0] != escaped.ranges()[1]) {
+                        members.add(escaped.ranges());
+                        continue;
+                    }
+                    from = escaped.ranges()[0];
+                } else {
+                    from = c;
+                }
+                int to = from;
+                if (position + 1 < pattern.length() && pattern.charAt(position) == '-'
+                        && pattern.charAt(position + 1) != ']') {
+                    position++;
+                    char end = pattern.charAt(position++);
+                    to = end == '\\' ? singleChar((Chars) parseEscape(true)) : end;
+                    if (to < from) {
+                        throw error("Invalid character range");
+                    }
+                }
+                members.add(new int[] {from, to});
+            }
+            int[] charRanges = normalize(members);
+            if (caseInsensitive) {
+                charRanges = withOtherCases(charRanges);
+            }
+            return new Chars(negated ? complement(charRanges) : charRanges);
+        }
+
+        private int singleChar(Chars chars) {
+            if (chars.ranges().length != 2 || chars.ranges()[0] != chars.ranges()[1]) {
+                throw error("Invalid character range");
+            }
+            return chars.ranges()[0];
+        }
+
+        private Term parseEscape(boolean inClass) {
+            if (position >= pattern.length()) {
+                throw error("Trailing backslash");
+            }
+            char c = pattern.charAt(position++);
+            switch (c) {
+                case 'd':
+                    return new Chars(new int[] {'0', '9'});
+                case 'D':
+                    return new Chars(complement(new int[] {'0', '9'}));
+                case 'w':
+                    return new Chars(WORD);
+                case 'W':
+                    return new Chars(complement(WORD));
+                case 's':
+                    return new Chars(SPACE);
+                case 'S':
+                    return new Chars(complement(SPACE));
+                case 't':
+                    return literal('\t');
+                case 'n':
+                    return literal('\n');
+                case 'r':
+                    return literal('\r');
+                case 'f':
+                    return literal('\f');
+                case 'x':
+                    return literal(hex(2));
+                case 'u':
+                    return literal(hex(4));
+                case 'A':
+                    if (!inClass) {
+                        return new Assertion(BEGIN);
+                    }
+                    break;
+                case 'z':
+                    if (!inClass) {
+                        return new Assertion(END);
+                    }
+                    break;
+                case 'b':
+                case 'B':
+                    throw error("Word boundaries are not supported");
+                default:
+                    if (c >= '1' && c <= '9') {
+                        throw error("Backreferences are not supported");
+                    }
+                    if (!Character.isLetterOrDigit(c)) {
+                        return literal(c);
+                    }
+                    break;
+            }
+            throw error("Unknown escape \\" + c);
+        }
+
+        private char hex(int digits) {
+            if (position + digits > pattern.length()) {
+                throw error("Invalid hexadecimal escape");
+            }
+            try {
+                char value = (char) Integer.parseInt(pattern.substring(position, position + digits), 16);
+                position += digits;
+                return value;
+            } catch (NumberFormatException e) {
+                throw error("Invalid hexadecimal escape");
+            }
+        }
+
+        private Chars literal(char c) {
+            int[] single = {c, c};
+            return new Chars(caseInsensitive ? withOtherCases(single) : single);
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " near index " + position + " of " + pattern);
+        }
+    }
+
+    private static final int[] WORD = {'0', '9', 'A', 'Z', '_', '_', 'a', 'z'};
+    private static final int[] SPACE = {'\t', '\r', ' ', ' '};
+
+    /**
+     * Sorts and merges overlapping or adjacent ranges.
+     */
+    private static int[] normalize(List<int[]> members) {
+        List<int[]> pairs = new ArrayList<>();
+        for (int[] member : members) {
+            for (int i = 0; i < member.length; i += 2) {
+                pairs.add(new int[] {member[i], member[i + 1]});
+            }
+        }
+        pairs.sort((left, right) -> Integer.compare(left[0], right[0]));
+        int[] merged = new int[pairs.size() * 2];
+        int count = 0;
+        for (int[] pair : pairs) {
+            if (count > 0 && pair[0] <= merged[count - 1] + 1) {
+                merged[count - 1] = Math.max(merged[count - 1], pair[1]);
+            } else {
+                merged[count++] = pair[0];
+                merged[count++] = pair[1];
+            }
+        }
+        return Arrays.copyOf(merged, count);
+    }
+
+    private static int[] complement(int[] charRanges) {
+        int[] result = new int[charRanges.length + 2];
+        int count = 0;
+        int next = 0;
+        for (int i = 0; i < charRanges.length; i += 2) {
+            if (charRanges[i] > next) {
+                result[count++] = next;
+                result[count++] = charRanges[i] - 1;
+            }
+            next = charRanges[i + 1] + 1;
+        }
+        if (next <= MAX_CHAR) {
+            result[count++] = next;
+            result[count++] = MAX_CHAR;
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Adds the upper and lower case forms of the characters, ranges too wide to enumerate are
+     * taken as they are.
+     */
+    private static int[] withOtherCases(int[] charRanges) {
+        List<int[]> members = new ArrayList<>();
+        members.add(charRanges);
+        for (int i = 0; i < charRanges.length; i += 2) {
+            if (charRanges[i + 1] - charRanges[i] > 1024) {
+                continue;
+            }
+            for (int c = charRanges[i]; c <= charRanges[i + 1]; c++) {
+                char lower = Character.toLowerCase((char) c);
+                char upper = Character.toUpperCase((char) c);
+                members.add(new int[] {lower, lower, upper, upper});
+            }
+        }
+        return normalize(members);
+    }
+}
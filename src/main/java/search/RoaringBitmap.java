@@ -0,0 +1,452 @@
+package search;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Compressed set of row numbers in the style of Roaring bitmaps.
+ * Rows are split by their high 16 bits into containers of up to 65536 rows: a sparse container
+ * is a sorted array of the low 16 bits, a dense one (more than 4096 rows) a 65536-bit bitmap.
+ * Set operations work container by container, so AND/OR/ANDNOT of two indexes cost about the
+ * size of the smaller one instead of the number of rows of the day.
+ * Immutable once built; add() is only meant for building, with rows in ascending order.
+ */
+public final class RoaringBitmap {
+    private static final int ARRAY_LIMIT = 4096;
+    private static final int BITMAP_WORDS = 1024;
+
+    private char[] keys;
+    private Container[] containers;
+    private int size;
+
+    public RoaringBitmap() {
+        this(new char[4], new Container[4], 0);
+    }
+
+    private RoaringBitmap(char[] keys, Container[] containers, int size) {
+        this.keys = keys;
+        this.containers = containers;
+        this.size = size;
+    }
+
+    /**
+     * @return the rows from (inclusive) to to (exclusive)
+     */
+    public static RoaringBitmap range(int from, int to) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        int row = from;
+        while (row < to) {
+            int key = row >>> 16;
+            int containerEnd = Math.min(to, (key + 1) << 16);
+            bitmap.append((char) key, Container.range(row & 0xFFFF, containerEnd - (key << 16)));
+            row = containerEnd;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Adds a row, at least as large as every row added before.
+     */
+    public void add(int row) {
+        char key = (char) (row >>> 16);
+        if (size == 0 || keys[size - 1] != key) {
+            append(key, new ArrayContainer());
+        }
+        containers[size - 1] = containers[size - 1].add((char) row);
+    }
+
+    public boolean contains(int row) {
+        int position = Arrays.binarySearch(keys, 0, size, (char) (row >>> 16));
+        return position >= 0 && containers[position].contains((char) row);
+    }
+
+    public int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public RoaringBitmap and(RoaringBitmap other) {
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                result.appendIfNotEmpty(keys[i], containers[i].and(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    public RoaringBitmap or(RoaringBitmap other) {
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j >= other.size || (i < size && keys[i] < other.keys[j])) {
+                result.append(keys[i], containers[i]);
+                i++;
+            } else if (i >= size || keys[i] > other.keys[j]) {
+                result.append(other.keys[j], other.containers[j]);
+                j++;
+            } else {
+                result.append(keys[i], containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the rows of this bitmap that are not in other
+     */
+    public RoaringBitmap andNot(RoaringBitmap other) {
+        RoaringBitmap result = new RoaringBitmap();
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && other.keys[j] < keys[i]) {
+                j++;
+            }
+            if (j < other.size && other.keys[j] == keys[i]) {
+                result.appendIfNotEmpty(keys[i], containers[i].andNot(other.containers[j]));
+            } else {
+                result.append(keys[i], containers[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param rowCount: number of rows of the day, the size of the returned set
+     */
+    public BitSet toBitSet(int rowCount) {
+        long[] words = new long[(rowCount + 63) >>> 6];
+        for (int i = 0; i < size; i++) {
+            containers[i].copyTo(words, keys[i] * BITMAP_WORDS);
+        }
+        return BitSet.valueOf(words);
+    }
+
+    /**
+     * Rough heap footprint, used to budget caches.
+     */
+    public long estimatedBytes() {
+        long bytes = 16L + keys.length * 2L + containers.length * 8L;
+        for (int i = 0; i < size; i++) {
+            bytes += containers[i].estimatedBytes();
+        }
+        return bytes;
+    }
+
+    private void appendIfNotEmpty(char key, Container container) {
+        if (container.cardinality() > 0) {
+            append(key, container);
+        }
+    }
+
+    private void append(char key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        keys[size] = key;
+        containers[size] = container;
+        size++;
+    }
+
+    /**
+     * Rows sharing the same high 16 bits. Operations never modify their operands,
+     * except add() which is only called while building.
+     */
+    private abstract static class Container {
+        static Container range(int from, int to) {
+            if (to - from <= ARRAY_LIMIT) {
+                ArrayContainer container = new ArrayContainer(to - from);
+                for (int value = from; value < to; value++) {
+                    container.values[container.cardinality++] = (char) value;
+                }
+                return container;
+            }
+            BitmapContainer container = new BitmapContainer();
+            for (int value = from; value < to; value++) {
+                container.words[value >>> 6] |= 1L << value;
+            }
+            container.cardinality = to - from;
+            return container;
+        }
+
+        abstract Container add(char value);
+
+        abstract boolean contains(char value);
+
+        abstract int cardinality();
+
+        abstract Container and(Container other);
+
+        abstract Container or(Container other);
+
+        abstract Container andNot(Container other);
+
+        abstract void copyTo(long[] words, int firstWord);
+
+        abstract long estimatedBytes();
+    }
+
+    private static final class ArrayContainer extends Container {
+        private char[] values;
+        private int cardinality;
+
+        ArrayContainer() {
+            this(8);
+        }
+
+        ArrayContainer(int capacity) {
+            values = new char[Math.max(capacity, 1)];
+        }
+
+        @Override
+        Container add(char value) {
+            if (cardinality > 0 && values[cardinality - 1] == value) {
+                return this;
+            }
+            if (cardinality == ARRAY_LIMIT) {
+                return toBitmap().add(value);
+            }
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_LIMIT, cardinality * 2));
+            }
+            values[cardinality++] = value;
+            return this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        Container and(Container other) {
+            ArrayContainer result = new ArrayContainer(cardinality);
+            if (other instanceof ArrayContainer array) {
+                int i = 0;
+                int j = 0;
+                while (i < cardinality && j < array.cardinality) {
+                    if (values[i] < array.values[j]) {
+                        i++;
+                    } else if (values[i] > array.values[j]) {
+                        j++;
+                    } else {
+                        result.values[result.cardinality++] = values[i];
+                        i++;
+                        j++;
+                    }
+                }
+            } else {
+                for (int i = 0; i < cardinality; i++) {
+                    if (other.contains(values[i])) {
+                        result.values[result.cardinality++] = values[i];
+                    }
+                }
+            }
+            return result;
+        }
+
+        @Override
+        Container or(Container other) {
+            if (other instanceof BitmapContainer) {
+                return other.or(this);
+            }
+            ArrayContainer array = (ArrayContainer) other;
+            char[] merged = new char[cardinality + array.cardinality];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < cardinality || j < array.cardinality) {
+                char next;
+                if (j >= array.cardinality || (i < cardinality && values[i] < array.values[j])) {
+                    next = values[i++];
+                } else if (i >= cardinality || values[i] > array.values[j]) {
+                    next = array.values[j++];
+                } else {
+                    next = values[i++];
+                    j++;
+                }
+                merged[count++] = next;
+            }
+            if (count > ARRAY_LIMIT) {
+                BitmapContainer bitmap = new BitmapContainer();
+                for (int k = 0; k < count; k++) {
+                    bitmap.words[merged[k] >>> 6] |= 1L << merged[k];
+                }
+                bitmap.cardinality = count;
+                return bitmap;
+            }
+            ArrayContainer result = new ArrayContainer();
+            result.values = merged;
+            result.cardinality = count;
+            return result;
+        }
+
+        @Override
+        Container andNot(Container other) {
+            ArrayContainer result = new ArrayContainer(cardinality);
+            for (int i = 0; i < cardinality; i++) {
+                if (!other.contains(values[i])) {
+                    result.values[result.cardinality++] = values[i];
+                }
+            }
+            return result;
+        }
+
+        @Override
+        void copyTo(long[] words, int firstWord) {
+            for (int i = 0; i < cardinality; i++) {
+                words[firstWord + (values[i] >>> 6)] |= 1L << values[i];
+            }
+        }
+
+        @Override
+        long estimatedBytes() {
+            return 24L + values.length * 2L;
+        }
+
+        private BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < cardinality; i++) {
+                bitmap.words[values[i] >>> 6] |= 1L << values[i];
+            }
+            bitmap.cardinality = cardinality;
+            return bitmap;
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        private final long[] words;
+        private int cardinality;
+
+        BitmapContainer() {
+            this(new long[BITMAP_WORDS]);
+        }
+
+        private BitmapContainer(long[] words) {
+            this.words = words;
+        }
+
+        /**
+         * Keeps the words as a bitmap, or turns them back into an array when they got sparse.
+         */
+        private static Container of(long[] words) {
+            int cardinality = 0;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+            }
+            if (cardinality > ARRAY_LIMIT) {
+                BitmapContainer bitmap = new BitmapContainer(words);
+                bitmap.cardinality = cardinality;
+                return bitmap;
+            }
+            ArrayContainer array = new ArrayContainer(cardinality);
+            for (int w = 0; w < words.length; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    array.values[array.cardinality++] = (char) ((w << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return array;
+        }
+
+        @Override
+        Container add(char value) {
+            long bit = 1L << value;
+            if ((words[value >>> 6] & bit) == 0) {
+                words[value >>> 6] |= bit;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        Container and(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+            long[] otherWords = ((BitmapContainer) other).words;
+            long[] result = new long[BITMAP_WORDS];
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                result[w] = words[w] & otherWords[w];
+            }
+            return of(result);
+        }
+
+        @Override
+        Container or(Container other) {
+            long[] result = words.clone();
+            if (other instanceof ArrayContainer array) {
+                for (int i = 0; i < array.cardinality; i++) {
+                    result[array.values[i] >>> 6] |= 1L << array.values[i];
+                }
+            } else {
+                long[] otherWords = ((BitmapContainer) other).words;
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    result[w] |= otherWords[w];
+                }
+            }
+            return of(result);
+        }
+
+        @Override
+        Container andNot(Container other) {
+            long[] result = words.clone();
+            if (other instanceof ArrayContainer array) {
+                for (int i = 0; i < array.cardinality; i++) {
+                    result[array.values[i] >>> 6] &= ~(1L << array.values[i]);
+                }
+            } else {
+                long[] otherWords = ((BitmapContainer) other).words;
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    result[w] &= ~otherWords[w];
+                }
+            }
+            return of(result);
+        }
+
+        @Override
+        void copyTo(long[] target, int firstWord) {
+            System.arraycopy(words, 0, target, firstWord, Math.min(BITMAP_WORDS, target.length - firstWord));
+        }
+
+        @Override
+        long estimatedBytes() {
+            return 24L + BITMAP_WORDS * 8L;
+        }
+    }
+}
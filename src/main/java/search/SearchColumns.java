@@ -0,0 +1,181 @@
+package search;
+
+import loganalyzer.LazyApacheLog;
+import loganalyzer.ModSecurity;
+import loganalyzer.StringDictionary;
+import loganalyzer.TimestampDecoder;
+
+import java.util.List;
+import java.util.function.IntToLongFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * Builds the searchable text columns of the Apache and ModSecurity views, and the search
+ * targets queries run against. Column names double as the field names of search queries.
+ */
+public final class SearchColumns {
+    private SearchColumns() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    public static final String IP = "ip";
+    public static final String METHOD = "method";
+    public static final String PROTOCOL = "protocol";
+    public static final String PATH = "path";
+    public static final String USER_AGENT = "ua";
+    public static final String TIMESTAMP = "time";
+    public static final String ATTACK_NAME = "attack";
+    public static final String ATTACK_DATA = "data";
+    public static final String SEVERITY = "severity";
+
+    /**
+     * @return a search target over the rows, its text columns are built by the first text search
+     */
+    public static SearchTarget apacheTarget(LazyApacheLog log) {
+        return new LazyTarget(log.size(), () -> forApache(log), log::statusCode, log::timestamp, log::offsetMinutes);
+    }
+
+    public static SearchTarget modSecurityTarget(List<ModSecurity> entries) {
+        return new LazyTarget(entries.size(), () -> forModSecurity(entries),
+                row -> entries.get(row).getStatusCode(), row -> entries.get(row).getEpochMillis(),
+                row -> TimestampDecoder.toOffsetMinutes(entries.get(row).getTimestamp()));
+    }
+
+    /**
+     * @return the sort key of a text column of the target, its text columns are built by the first call
+     */
+    public static IntUnaryOperator sortKey(SearchTarget target, String column) {
+        TextColumns columns = target.textColumns();
+        return columns.sortKey(columns.columnOf(column));
+    }
+
+    private static final class LazyTarget implements SearchTarget {
+        private final int rowCount;
+        private final Supplier<TextColumns> columnsBuilder;
+        private final IntUnaryOperator statusCodes;
+        private final IntToLongFunction timestamps;
+        private final IntUnaryOperator offsets;
+        private TextColumns columns;
+        private BitmapIndex statusIndex;
+        private BitmapIndex statusClassIndex;
+        private int[] offsetBounds;
+
+        LazyTarget(int rowCount, Supplier<TextColumns> columnsBuilder,
+                   IntUnaryOperator statusCodes, IntToLongFunction timestamps, IntUnaryOperator offsets) {
+            this.rowCount = rowCount;
+            this.columnsBuilder = columnsBuilder;
+            this.statusCodes = statusCodes;
+            this.timestamps = timestamps;
+            this.offsets = offsets;
+        }
+
+        @Override
+        public int rowCount() {
+            return rowCount;
+        }
+
+        @Override
+        public synchronized TextColumns textColumns() {
+            if (columns == null) {
+                columns = columnsBuilder.get();
+            }
+            return columns;
+        }
+
+        @Override
+        public int statusCode(int row) {
+            return statusCodes.applyAsInt(row);
+        }
+
+        @Override
+        public synchronized BitmapIndex statusIndex() {
+            if (statusIndex == null) {
+                statusIndex = BitmapIndex.build(rowCount, statusCodes);
+            }
+            return statusIndex;
+        }
+
+        @Override
+        public synchronized BitmapIndex statusClassIndex() {
+            if (statusClassIndex == null) {
+                statusClassIndex = BitmapIndex.build(rowCount, row -> statusCodes.applyAsInt(row) / 100);
+            }
+            return statusClassIndex;
+        }
+
+        @Override
+        public long epochMillis(int row) {
+            return timestamps.applyAsLong(row);
+        }
+
+        @Override
+        public int offsetMinutes(int row) {
+            return offsets.applyAsInt(row);
+        }
+
+        @Override
+        public int minOffsetMinutes() {
+            return offsetBounds()[0];
+        }
+
+        @Override
+        public int maxOffsetMinutes() {
+            return offsetBounds()[1];
+        }
+
+        private synchronized int[] offsetBounds() {
+            if (offsetBounds == null) {
+                int min = rowCount == 0 ? 0 : Integer.MAX_VALUE;
+                int max = rowCount == 0 ? 0 : Integer.MIN_VALUE;
+                for (int row = 0; row < rowCount; row++) {
+                    int offset = offsets.applyAsInt(row);
+                    min = Math.min(min, offset);
+                    max = Math.max(max, offset);
+                }
+                offsetBounds = new int[] {min, max};
+            }
+            return offsetBounds;
+        }
+    }
+
+    /**
+     * Shares the dictionaries and ids the log encoded its text fields with while it was loaded.
+     */
+    public static TextColumns forApache(LazyApacheLog log) {
+        String[] names = new String[LazyApacheLog.TEXT_FIELDS];
+        names[LazyApacheLog.IP] = IP;
+        names[LazyApacheLog.METHOD] = METHOD;
+        names[LazyApacheLog.PROTOCOL] = PROTOCOL;
+        names[LazyApacheLog.PATH] = PATH;
+        names[LazyApacheLog.USER_AGENT] = USER_AGENT;
+        names[LazyApacheLog.TIMESTAMP] = TIMESTAMP;
+        StringDictionary[] dictionaries = new StringDictionary[names.length];
+        int[][] ids = new int[names.length][];
+        for (int field = 0; field < names.length; field++) {
+            dictionaries[field] = log.dictionary(field);
+            ids[field] = log.textIds(field);
+        }
+        return new TextColumns(log.size(), names, dictionaries, ids);
+    }
+
+    public static TextColumns forModSecurity(List<ModSecurity> entries) {
+        TextColumns columns = new TextColumns(entries.size(),
+                IP, PATH, METHOD, USER_AGENT, ATTACK_NAME, ATTACK_DATA, SEVERITY, TIMESTAMP);
+        for (int row = 0; row < entries.size(); row++) {
+            ModSecurity entry = entries.get(row);
+            columns.set(0, row, entry.getRemoteAddress());
+            columns.set(1, row, entry.getRequestPath());
+            columns.set(2, row, entry.getMethod());
+            columns.set(3, row, entry.getUserAgent());
+            columns.set(4, row, entry.getAttackName());
+            columns.set(5, row, entry.getAttackData());
+            columns.set(6, row, entry.getSeverity());
+            // the time filters of a regex clause match this text, as on the Apache view
+            columns.set(7, row, entry.getTimestamp());
+        }
+        // the old search never looked at the time of an entry, a bare word such as "May" would match every row
+        columns.excludeFromAnyColumn(TIMESTAMP);
+        return columns;
+    }
+}
@@ -0,0 +1,54 @@
+package search;
+
+import loganalyzer.TimeOrder;
+
+/**
+ * The rows of a loaded day as seen by a compiled Query, in ascending time order.
+ */
+public interface SearchTarget {
+    int rowCount();
+
+    /**
+     * @return the searchable text columns, built on first use
+     */
+    TextColumns textColumns();
+
+    int statusCode(int row);
+
+    /**
+     * @return bitmaps of the rows of each status code, built on first use
+     */
+    BitmapIndex statusIndex();
+
+    /**
+     * @return bitmaps of the rows of each status class, 4 for 4xx, built on first use
+     */
+    BitmapIndex statusClassIndex();
+
+    /**
+     * @return the time of the row in epoch milliseconds
+     */
+    long epochMillis(int row);
+
+    /**
+     * @return the zone offset printed in the timestamp of the row, in minutes
+     */
+    int offsetMinutes(int row);
+
+    /**
+     * @return the smallest zone offset of the rows in minutes, 0 when there are none
+     */
+    int minOffsetMinutes();
+
+    /**
+     * @return the largest zone offset of the rows in minutes, 0 when there are none
+     */
+    int maxOffsetMinutes();
+
+    /**
+     * @return the first row at or after millis, rowCount() when there is none
+     */
+    default int firstRowAtOrAfter(long millis) {
+        return TimeOrder.firstAtOrAfter(this::epochMillis, rowCount(), millis);
+    }
+}
@@ -0,0 +1,12 @@
+package search;
+
+/**
+ * Thrown when evaluating a query takes longer than the time budget it was given.
+ */
+public class SearchTimeoutException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public SearchTimeoutException(String message) {
+        super(message);
+    }
+}
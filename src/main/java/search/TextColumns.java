@@ -0,0 +1,252 @@
+package search;
+
+import loganalyzer.StringDictionary;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Searchable text columns of a loaded day.
+ * Each column is dictionary-encoded, one value id per row, and gets a TrigramIndex over its
+ * distinct values the first time it is searched. A substring search therefore verifies distinct
+ * values only, then maps the matching ids back to rows with a single pass over an int array.
+ * Columns with few distinct values (methods, protocols, severities, attack names) also get a
+ * BitmapIndex, so their matching rows are the union of per-value bitmaps without any row pass.
+ * IP columns get an IpPrefixIndex when they are first searched by address range.
+ */
+public final class TextColumns {
+    private static final int BITMAP_INDEX_MAX_VALUES = 1024;
+
+    private final String[] names;
+    private final StringDictionary[] dictionaries;
+    private final int[][] ids;
+    private final TrigramIndex[] indexes;
+    private final BitmapIndex[] bitmapIndexes;
+    private final IpPrefixIndex[] ipIndexes;
+    private final boolean[] anyColumn;
+    private final int rowCount;
+
+    /**
+     * @param rowCount: number of rows of the day
+     * @param names: names of the columns
+     */
+    public TextColumns(int rowCount, String... names) {
+        this(rowCount, names, new StringDictionary[names.length], new int[names.length][]);
+    }
+
+    /**
+     * @param dictionaries: existing dictionaries to reuse for the columns, rows then hold ids
+     *                    set with setId; a null entry gets a new dictionary
+     * @param ids: ids of the rows already encoded with those dictionaries, shared and not modified
+     *           afterwards; a null entry gets a new array
+     */
+    public TextColumns(int rowCount, String[] names, StringDictionary[] dictionaries, int[][] ids) {
+        this.names = names.clone();
+        this.rowCount = rowCount;
+        this.dictionaries = new StringDictionary[names.length];
+        this.ids = new int[names.length][];
+        this.indexes = new TrigramIndex[names.length];
+        this.bitmapIndexes = new BitmapIndex[names.length];
+        this.ipIndexes = new IpPrefixIndex[names.length];
+        this.anyColumn = new boolean[names.length];
+        Arrays.fill(anyColumn, true);
+        for (int column = 0; column < names.length; column++) {
+            this.dictionaries[column] = dictionaries[column] != null ? dictionaries[column] : new StringDictionary();
+            this.ids[column] = ids[column] != null ? ids[column] : new int[rowCount];
+        }
+    }
+
+    /**
+     * @return the position of the column, or -1 when there is no column with this name
+     */
+    public int columnOf(String name) {
+        for (int column = 0; column < names.length; column++) {
+            if (names[column].equals(name)) {
+                return column;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Leaves the column out of the searches on any column, it is then only matched when named.
+     */
+    public void excludeFromAnyColumn(String name) {
+        anyColumn[columnOf(name)] = false;
+    }
+
+    /**
+     * @return whether a search on any column looks at this column
+     */
+    public boolean isAnyColumn(int column) {
+        return anyColumn[column];
+    }
+
+    public int columnCount() {
+        return names.length;
+    }
+
+    public int rowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @param id: id of the value in dictionary(column)
+     */
+    public void setId(int column, int row, int id) {
+        ids[column][row] = id;
+    }
+
+    public void set(int column, int row, CharSequence text, int start, int end) {
+        ids[column][row] = dictionaries[column].idOf(text, start, end);
+    }
+
+    /**
+     * @param value: the value of the row, null is stored as ""
+     */
+    public void set(int column, int row, String value) {
+        ids[column][row] = value == null ? dictionaries[column].idOf("") : dictionaries[column].idOf(value);
+    }
+
+    public StringDictionary dictionary(int column) {
+        return dictionaries[column];
+    }
+
+    public int valueId(int column, int row) {
+        return ids[column][row];
+    }
+
+    /**
+     * Ranks the distinct values of the column in String order, so rows sort on an int per row
+     * without building their text.
+     * @return the rank of the value of a row
+     */
+    public IntUnaryOperator sortKey(int column) {
+        StringDictionary dictionary = dictionaries[column];
+        Integer[] byValue = new Integer[dictionary.size()];
+        for (int id = 0; id < byValue.length; id++) {
+            byValue[id] = id;
+        }
+        Arrays.sort(byValue, Comparator.comparing(dictionary::valueOf));
+        int[] ranks = new int[byValue.length];
+        for (int rank = 0; rank < byValue.length; rank++) {
+            ranks[byValue[rank]] = rank;
+        }
+        int[] columnIds = ids[column];
+        return row -> ranks[columnIds[row]];
+    }
+
+    private synchronized TrigramIndex index(int column) {
+        if (indexes[column] == null) {
+            indexes[column] = new TrigramIndex(dictionaries[column]);
+        }
+        return indexes[column];
+    }
+
+    /**
+     * @return whether the column has few enough distinct values to get a BitmapIndex
+     */
+    public boolean isLowCardinality(int column) {
+        return dictionaries[column].size() <= BITMAP_INDEX_MAX_VALUES;
+    }
+
+    /**
+     * @return the rows holding one of the values, or null when the column is not low-cardinality
+     */
+    public RoaringBitmap rowsWithValues(int column, BitSet valueIds) {
+        if (!isLowCardinality(column)) {
+            return null;
+        }
+        return bitmapIndex(column).rowsMatching(valueIds::get);
+    }
+
+    private synchronized BitmapIndex bitmapIndex(int column) {
+        if (bitmapIndexes[column] == null) {
+            int[] columnIds = ids[column];
+            bitmapIndexes[column] = BitmapIndex.build(rowCount, row -> columnIds[row]);
+        }
+        return bitmapIndexes[column];
+    }
+
+    /**
+     * @return the ids of the distinct values of the column containing the text
+     */
+    public BitSet valuesContaining(int column, String text) {
+        return index(column).valuesContaining(text);
+    }
+
+    /**
+     * @return the ids of the distinct values of the column that are addresses in one of the ranges
+     */
+    public BitSet valuesInRanges(int column, IpRanges ranges) {
+        return ipIndex(column).valuesIn(ranges);
+    }
+
+    private synchronized IpPrefixIndex ipIndex(int column) {
+        if (ipIndexes[column] == null) {
+            ipIndexes[column] = new IpPrefixIndex(dictionaries[column]);
+        }
+        return ipIndexes[column];
+    }
+
+    /**
+     * @return the rows whose value in the column contains the text
+     */
+    public BitSet rowsContaining(int column, String text) {
+        BitSet rows = new BitSet(rowCount);
+        addRowsContaining(column, text, rows);
+        return rows;
+    }
+
+    /**
+     * @return the rows where at least one column contains the text
+     */
+    public BitSet rowsContainingAny(String text) {
+        BitSet rows = new BitSet(rowCount);
+        for (int column = 0; column < names.length; column++) {
+            if (anyColumn[column]) {
+                addRowsContaining(column, text, rows);
+            }
+        }
+        return rows;
+    }
+
+    private void addRowsContaining(int column, String text, BitSet rows) {
+        BitSet matchingIds = index(column).valuesContaining(text);
+        if (matchingIds.isEmpty()) {
+            return;
+        }
+        int[] columnIds = ids[column];
+        if (matchingIds.cardinality() == dictionaries[column].size()) {
+            rows.set(0, rowCount);
+            return;
+        }
+        for (int row = 0; row < rowCount; row++) {
+            if (matchingIds.get(columnIds[row])) {
+                rows.set(row);
+            }
+        }
+    }
+
+    /**
+     * Rough heap footprint, used to budget caches.
+     */
+    public long estimatedBytes() {
+        long bytes = 0;
+        for (int column = 0; column < names.length; column++) {
+            bytes += 4L * rowCount + dictionaries[column].estimatedBytes();
+            if (indexes[column] != null) {
+                bytes += indexes[column].estimatedBytes();
+            }
+            if (bitmapIndexes[column] != null) {
+                bytes += bitmapIndexes[column].estimatedBytes();
+            }
+            if (ipIndexes[column] != null) {
+                bytes += ipIndexes[column].estimatedBytes();
+            }
+        }
+        return bytes;
+    }
+}
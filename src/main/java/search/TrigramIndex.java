@@ -0,0 +1,199 @@
+package search;
+
+import loganalyzer.StringDictionary;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Trigram index over the distinct values of a dictionary-encoded column.
+ * Every value is cut into its overlapping 3-character substrings, and a substring query only
+ * verifies the values holding all the trigrams of the query, so a search costs a few posting
+ * list intersections instead of a String.contains per row.
+ * Trigrams are hashed to 32 bits; collisions only add candidates, which verification removes.
+ * Posting lists are laid out in one int array, counted in a first pass and filled in a second.
+ * Immutable once built, values added to the dictionary afterwards are not indexed.
+ */
+public final class TrigramIndex {
+    private final StringDictionary dictionary;
+    private final int valueCount;
+    // open-addressing table of the trigram keys with, per slot, the number of values holding it
+    private int[] slotKeys = new int[1024];
+    private boolean[] slotUsed = new boolean[1024];
+    private int[] slotCounts = new int[1024];
+    private int[] slotLastIds = new int[1024];
+    private int usedSlots;
+    // postings of slot s are ids[slotStarts[s] .. slotStarts[s] + slotCounts[s]), sorted by id
+    private final int[] slotStarts;
+    private final int[] ids;
+
+    public TrigramIndex(StringDictionary dictionary) {
+        this.dictionary = dictionary;
+        this.valueCount = dictionary.size();
+        Arrays.fill(slotLastIds, -1);
+        int total = 0;
+        for (int id = 0; id < valueCount; id++) {
+            String value = dictionary.valueOf(id);
+            for (int i = 0; i + 3 <= value.length(); i++) {
+                int slot = insert(key(value, i));
+                if (slotLastIds[slot] != id) {
+                    slotLastIds[slot] = id;
+                    slotCounts[slot]++;
+                    total++;
+                }
+            }
+        }
+        slotStarts = new int[slotKeys.length];
+        int start = 0;
+        for (int slot = 0; slot < slotKeys.length; slot++) {
+            slotStarts[slot] = start;
+            start += slotCounts[slot];
+        }
+        ids = new int[total];
+        int[] filled = new int[slotKeys.length];
+        Arrays.fill(slotLastIds, -1);
+        for (int id = 0; id < valueCount; id++) {
+            String value = dictionary.valueOf(id);
+            for (int i = 0; i + 3 <= value.length(); i++) {
+                int slot = find(key(value, i));
+                if (slotLastIds[slot] != id) {
+                    slotLastIds[slot] = id;
+                    ids[slotStarts[slot] + filled[slot]++] = id;
+                }
+            }
+        }
+        slotLastIds = null;
+    }
+
+    private static int key(CharSequence text, int start) {
+        return ((text.charAt(start) * 31) + text.charAt(start + 1)) * 31 + text.charAt(start + 2);
+    }
+
+    private static int firstSlot(int key, int mask) {
+        int hash = key * 0x9E3779B1;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /**
+     * @return the slot of the key, or -1 when it is not in the table
+     */
+    private int find(int key) {
+        int mask = slotKeys.length - 1;
+        int slot = firstSlot(key, mask);
+        while (slotUsed[slot]) {
+            if (slotKeys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int insert(int key) {
+        int slot = find(key);
+        if (slot >= 0) {
+            return slot;
+        }
+        if ((usedSlots + 1) * 2 > slotKeys.length) {
+            rehash();
+        }
+        int mask = slotKeys.length - 1;
+        slot = firstSlot(key, mask);
+        while (slotUsed[slot]) {
+            slot = (slot + 1) & mask;
+        }
+        slotUsed[slot] = true;
+        slotKeys[slot] = key;
+        usedSlots++;
+        return slot;
+    }
+
+    private void rehash() {
+        int[] oldKeys = slotKeys;
+        boolean[] oldUsed = slotUsed;
+        int[] oldCounts = slotCounts;
+        int[] oldLastIds = slotLastIds;
+        int capacity = oldKeys.length * 2;
+        slotKeys = new int[capacity];
+        slotUsed = new boolean[capacity];
+        slotCounts = new int[capacity];
+        slotLastIds = new int[capacity];
+        Arrays.fill(slotLastIds, -1);
+        int mask = capacity - 1;
+        for (int old = 0; old < oldKeys.length; old++) {
+            if (!oldUsed[old]) {
+                continue;
+            }
+            int slot = firstSlot(oldKeys[old], mask);
+            while (slotUsed[slot]) {
+                slot = (slot + 1) & mask;
+            }
+            slotUsed[slot] = true;
+            slotKeys[slot] = oldKeys[old];
+            slotCounts[slot] = oldCounts[old];
+            slotLastIds[slot] = oldLastIds[old];
+        }
+    }
+
+    /**
+     * @return the ids of the dictionary values containing the text
+     */
+    public BitSet valuesContaining(String text) {
+        BitSet matches = new BitSet(valueCount);
+        if (text.length() < 3) {
+            // too short to hold a trigram, the distinct values are few enough to check directly
+            for (int id = 0; id < valueCount; id++) {
+                if (dictionary.valueOf(id).contains(text)) {
+                    matches.set(id);
+                }
+            }
+            return matches;
+        }
+        int[] candidates = null;
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            int slot = find(key(text, i));
+            if (slot < 0) {
+                return matches;
+            }
+            candidates = candidates == null
+                    ? Arrays.copyOfRange(ids, slotStarts[slot], slotStarts[slot] + slotCounts[slot])
+                    : intersect(candidates, slot);
+            if (candidates.length == 0) {
+                return matches;
+            }
+        }
+        for (int id : candidates) {
+            if (dictionary.valueOf(id).contains(text)) {
+                matches.set(id);
+            }
+        }
+        return matches;
+    }
+
+    private int[] intersect(int[] candidates, int slot) {
+        int[] result = new int[candidates.length];
+        int count = 0;
+        int i = 0;
+        int j = slotStarts[slot];
+        int end = j + slotCounts[slot];
+        while (i < candidates.length && j < end) {
+            if (candidates[i] < ids[j]) {
+                i++;
+            } else if (candidates[i] > ids[j]) {
+                j++;
+            } else {
+                result[count++] = candidates[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Rough heap footprint, used to budget caches.
+     */
+    public long estimatedBytes() {
+        return 13L * slotKeys.length + 4L * ids.length;
+    }
+}
@@ -0,0 +1,342 @@
+package stats;
+
+import loganalyzer.ApacheLineTokenizer;
+import loganalyzer.TimestampDecoder;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * Everything the dashboard shows for one day, kept per minute: requests per status class, method
+ * and country, and matches per ModSecurity rule. The busiest IPs, paths, user agents and rules of
+ * the day are tracked by TopK summaries, and the number of distinct IPs, paths and user agents by
+ * HyperLogLog sketches per quarter hour, so a scan or a flood of distinct clients cannot grow them.
+ * Response sizes are kept in histograms per quarter hour, per status class and per path.
+ * Lines are bucketed on the date and time printed in the log, the day the user picked, whatever the
+ * zone of the machine or the offset of the log.
+ * Aggregates are filled by a single parallel pass over the log lines, each chunk of the files
+ * filling its own partial aggregate, and the partials are merged. Any interval of the dashboard is
+ * then a re-bucketing of the 1440 minutes, without going back to the lines.
+ * This is also what RollupStore persists for a day.
+ */
+public final class DashboardAggregate {
+    public static final String[] STATUS_CLASSES = {"200-299", "300-399", "400-499", "500-599", "Other"};
+    public static final String UNKNOWN_COUNTRY = "N/A";
+
+    private static final long MINUTE_MILLIS = 60_000L;
+    private static final int DAY_MINUTES = 1440;
+    private static final int MAX_METHODS = 64;
+    private static final int MAX_COUNTRIES = 512;
+    private static final int MAX_RULES = 256;
+    static final int TOP_CAPACITY = 1000;
+
+    /**
+     * Requests of one interval of the line chart.
+     * @param start: wall-clock time the interval starts at, as printed in the log, in milliseconds since 1970-01-01T00:00
+     * @param statusCounts: requests per status class, indexed like STATUS_CLASSES
+     * @param distinctIps: estimated number of distinct IPs, likewise for paths and user agents
+     * @param sizes: sizes of the responses
+     */
+    public record Slot(long start, int[] statusCounts, long distinctIps, long distinctPaths,
+                       long distinctUserAgents, Sizes sizes) {
+        public int total() {
+            int total = 0;
+            for (int count : statusCounts) {
+                total += count;
+            }
+            return total;
+        }
+    }
+
+    /**
+     * A line of a ranking table.
+     * @param error: how much count may exceed the true count, 0 when it is exact
+     * @param detail: e.g. the country of an IP, null when there is none
+     * @param sizes: sizes of the responses, for the rankings keeping them, null otherwise
+     */
+    public record Ranked(String name, int count, int error, String detail, Sizes sizes) {
+    }
+
+    /**
+     * Sizes of the responses to some requests, the percentiles are estimates within about 1.6% of the true sizes.
+     * @param bytes: total size, exact
+     */
+    public record Sizes(long count, long bytes, long p50, long p95, long p99) {
+    }
+
+    private final LocalDate day;
+    private final long dayStart;
+    private final int minutes;
+    private final UnaryOperator<String> countryOf;
+    private final MinuteCounts statuses;
+    private final MinuteCounts methods;
+    private final MinuteCounts countries;
+    private final MinuteCounts rules;
+    private final TopK ips = new TopK(TOP_CAPACITY);
+    private final TopK paths = new TopK(TOP_CAPACITY, true);
+    private final TopK userAgents = new TopK(TOP_CAPACITY);
+    private final TopK topRules = new TopK(TOP_CAPACITY);
+    private final QuarterHourSketches<HyperLogLog> distinctIps;
+    private final QuarterHourSketches<HyperLogLog> distinctPaths;
+    private final QuarterHourSketches<HyperLogLog> distinctUserAgents;
+    private final QuarterHourSketches<SizeHistogram> sizes;
+    private final SizeHistogram[] statusSizes = new SizeHistogram[STATUS_CLASSES.length];
+
+    /**
+     * @param countryOf: country of an IP address, called once per new address
+     */
+    DashboardAggregate(LocalDate day, UnaryOperator<String> countryOf) {
+        this.day = day;
+        this.dayStart = day.toEpochDay() * DAY_MINUTES * MINUTE_MILLIS;
+        this.minutes = DAY_MINUTES;
+        this.countryOf = countryOf;
+        this.statuses = new MinuteCounts(minutes, STATUS_CLASSES.length, STATUS_CLASSES);
+        this.methods = new MinuteCounts(minutes, MAX_METHODS);
+        this.countries = new MinuteCounts(minutes, MAX_COUNTRIES);
+        this.rules = new MinuteCounts(minutes, MAX_RULES);
+        this.distinctIps = new QuarterHourSketches<>(minutes, HyperLogLog::new);
+        this.distinctPaths = new QuarterHourSketches<>(minutes, HyperLogLog::new);
+        this.distinctUserAgents = new QuarterHourSketches<>(minutes, HyperLogLog::new);
+        this.sizes = new QuarterHourSketches<>(minutes, SizeHistogram::new);
+        for (int statusClass = 0; statusClass < STATUS_CLASSES.length; statusClass++) {
+            statusSizes[statusClass] = new SizeHistogram();
+        }
+    }
+
+    /**
+     * Counts the last tokenized line, lines outside the day are ignored.
+     * @throws NumberFormatException when the status code or the response size is not a number
+     */
+    void addRequest(ApacheLineTokenizer tokenizer) {
+        long millis = TimestampDecoder.toLocalEpochMillis(tokenizer.line(),
+                tokenizer.start(ApacheLineTokenizer.TIMESTAMP), tokenizer.end(ApacheLineTokenizer.TIMESTAMP));
+        int minute = minuteOf(millis);
+        if (minute < 0) {
+            return;
+        }
+        int statusClass = statusClassOf(tokenizer.intField(ApacheLineTokenizer.STATUS));
+        long bytes = tokenizer.longField(ApacheLineTokenizer.BYTES);
+        statuses.add(statusClass, minute, 1);
+        statusSizes[statusClass].add(bytes);
+        sizes.at(minute).add(bytes);
+        methods.add(methods.idOf(tokenizer.method()), minute, 1);
+        CharSequence line = tokenizer.line();
+        int ipStart = tokenizer.start(ApacheLineTokenizer.IP);
+        int ipEnd = tokenizer.end(ApacheLineTokenizer.IP);
+        int ipId = ips.add(line, ipStart, ipEnd);
+        String country = ips.pendingDetail(ipId);
+        if (country == null) {
+            country = countryOf.apply(line.subSequence(ipStart, ipEnd).toString());
+            country = country == null ? UNKNOWN_COUNTRY : country;
+            ips.setPendingDetail(ipId, country);
+        }
+        countries.add(countries.idOf(country), minute, 1);
+        distinctIps.at(minute).add(HyperLogLog.hash(line, ipStart, ipEnd));
+        int pathId = paths.add(line, tokenizer.requestPathStart(), tokenizer.requestPathEnd());
+        paths.addSize(pathId, bytes);
+        distinctPaths.at(minute).add(HyperLogLog.hash(line, tokenizer.requestPathStart(), tokenizer.requestPathEnd()));
+        if (tokenizer.hasField(ApacheLineTokenizer.USER_AGENT)) {
+            userAgents.add(line, tokenizer.start(ApacheLineTokenizer.USER_AGENT),
+                    tokenizer.end(ApacheLineTokenizer.USER_AGENT));
+            distinctUserAgents.at(minute).add(HyperLogLog.hash(line, tokenizer.start(ApacheLineTokenizer.USER_AGENT),
+                    tokenizer.end(ApacheLineTokenizer.USER_AGENT)));
+        } else {
+            userAgents.add("");
+            distinctUserAgents.at(minute).add(HyperLogLog.hash("", 0, 0));
+        }
+    }
+
+    /**
+     * @param timestamp: time of the entry as printed in the log
+     * @param rule: name of the matched rule, entries without one are not counted
+     */
+    void addRule(String timestamp, String rule) {
+        int minute = minuteOf(TimestampDecoder.toLocalEpochMillis(timestamp));
+        if (minute >= 0 && rule != null) {
+            rules.add(rules.idOf(rule), minute, 1);
+            topRules.add(rule);
+        }
+    }
+
+    /**
+     * @param millis: wall-clock time, see TimestampDecoder.toLocalEpochMillis
+     * @return the minute of the day, or -1 when the time is outside the day
+     */
+    private int minuteOf(long millis) {
+        if (millis < dayStart) {
+            return -1;
+        }
+        long minute = (millis - dayStart) / MINUTE_MILLIS;
+        return minute < minutes ? (int) minute : -1;
+    }
+
+    /**
+     * Adds the counts of another partial aggregate of the same day into this one.
+     */
+    DashboardAggregate merge(DashboardAggregate other) {
+        statuses.merge(other.statuses);
+        methods.merge(other.methods);
+        countries.merge(other.countries);
+        rules.merge(other.rules);
+        ips.merge(other.ips);
+        paths.merge(other.paths);
+        userAgents.merge(other.userAgents);
+        topRules.merge(other.topRules);
+        distinctIps.merge(other.distinctIps);
+        distinctPaths.merge(other.distinctPaths);
+        distinctUserAgents.merge(other.distinctUserAgents);
+        sizes.merge(other.sizes);
+        for (int statusClass = 0; statusClass < STATUS_CLASSES.length; statusClass++) {
+            statusSizes[statusClass].merge(other.statusSizes[statusClass]);
+        }
+        return this;
+    }
+
+    /**
+     * Adds the summaries behind the IP, path, user agent and rule rankings and the response sizes
+     * per status class of the day into those of a range.
+     */
+    void mergeRankingsInto(TopK rangeIps, TopK rangePaths, TopK rangeUserAgents, TopK rangeRules,
+                           SizeHistogram[] rangeStatusSizes) {
+        rangeIps.merge(ips);
+        rangePaths.merge(paths);
+        rangeUserAgents.merge(userAgents);
+        rangeRules.merge(topRules);
+        for (int statusClass = 0; statusClass < STATUS_CLASSES.length; statusClass++) {
+            rangeStatusSizes[statusClass].merge(statusSizes[statusClass]);
+        }
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        statuses.write(out);
+        methods.write(out);
+        countries.write(out);
+        rules.write(out);
+        ips.write(out);
+        paths.write(out);
+        userAgents.write(out);
+        topRules.write(out);
+        distinctIps.write(out);
+        distinctPaths.write(out);
+        distinctUserAgents.write(out);
+        sizes.write(out);
+        for (SizeHistogram statusClassSizes : statusSizes) {
+            statusClassSizes.write(out);
+        }
+    }
+
+    static DashboardAggregate read(LocalDate day, UnaryOperator<String> countryOf, DataInputStream in)
+            throws IOException {
+        DashboardAggregate aggregate = new DashboardAggregate(day, countryOf);
+        aggregate.statuses.read(in);
+        aggregate.methods.read(in);
+        aggregate.countries.read(in);
+        aggregate.rules.read(in);
+        aggregate.ips.read(in);
+        aggregate.paths.read(in);
+        aggregate.userAgents.read(in);
+        aggregate.topRules.read(in);
+        aggregate.distinctIps.read(in);
+        aggregate.distinctPaths.read(in);
+        aggregate.distinctUserAgents.read(in);
+        aggregate.sizes.read(in);
+        for (SizeHistogram statusClassSizes : aggregate.statusSizes) {
+            statusClassSizes.read(in);
+        }
+        return aggregate;
+    }
+
+    /**
+     * @return the index of the status class in STATUS_CLASSES
+     */
+    public static int statusClassOf(int statusCode) {
+        return statusCode >= 200 && statusCode < 600 ? statusCode / 100 - 2 : STATUS_CLASSES.length - 1;
+    }
+
+    public LocalDate getDay() {
+        return day;
+    }
+
+    /**
+     * Re-buckets the minutes into intervals starting at midnight, see DaySeries.slots.
+     * @param slotMillis: length of an interval, a multiple of a minute
+     */
+    public List<Slot> slots(long slotMillis) {
+        return series().slots(slotMillis);
+    }
+
+    /**
+     * @return what the line chart is drawn from, sharing the counts and sketches of this aggregate
+     */
+    DaySeries series() {
+        return new DaySeries(day, dayStart, minutes, statuses, distinctIps, distinctPaths, distinctUserAgents, sizes);
+    }
+
+    /**
+     * @return the status classes by decreasing number of requests with the sizes of their responses,
+     * the classes without any are left out
+     */
+    public List<Ranked> statusClassRanking() {
+        List<Ranked> ranking = new ArrayList<>();
+        for (int statusClass = 0; statusClass < STATUS_CLASSES.length; statusClass++) {
+            int total = statuses.total(statusClass);
+            if (total > 0) {
+                ranking.add(new Ranked(STATUS_CLASSES[statusClass], total, 0, null,
+                        statusSizes[statusClass].summary()));
+            }
+        }
+        return sorted(ranking);
+    }
+
+    /**
+     * @return the busiest IPs by decreasing number of requests, at most limit of them, with their country as detail
+     */
+    public List<Ranked> ipRanking(int limit) {
+        return ips.ranking(limit);
+    }
+
+    /**
+     * @return the most requested paths, at most limit of them, with the sizes of their responses
+     */
+    public List<Ranked> pathRanking(int limit) {
+        return paths.ranking(limit);
+    }
+
+    public List<Ranked> userAgentRanking(int limit) {
+        return userAgents.ranking(limit);
+    }
+
+    public List<Ranked> methodRanking() {
+        return ranked(methods);
+    }
+
+    public List<Ranked> countryRanking() {
+        return ranked(countries);
+    }
+
+    public List<Ranked> ruleRanking(int limit) {
+        return topRules.ranking(limit);
+    }
+
+    private static List<Ranked> ranked(MinuteCounts counts) {
+        List<Ranked> ranking = new ArrayList<>();
+        for (int id = 0; id < counts.size(); id++) {
+            int total = counts.total(id);
+            if (total > 0) {
+                ranking.add(new Ranked(counts.nameOf(id), total, 0, null, null));
+            }
+        }
+        return sorted(ranking);
+    }
+
+    private static List<Ranked> sorted(List<Ranked> ranking) {
+        ranking.sort(Comparator.comparingInt(Ranked::count).reversed());
+        return ranking;
+    }
+}
@@ -0,0 +1,150 @@
+package stats;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * What the dashboard shows for a range of days: the intervals of the line chart and the rankings
+ * of the whole range. It is filled one day at a time, e.g. from the rollups of RollupStore, and
+ * keeps the minute status counts and quarter-hour sketches of every day, so the line chart is
+ * re-bucketed into another interval without reading the rollups again, and the bounded ranking
+ * summaries of the whole range. A day takes a few hundred kilobytes at most.
+ */
+public final class DashboardRange {
+    private final LocalDate first;
+    private final LocalDate last;
+    private final List<DaySeries> days = new ArrayList<>();
+    private final int[] statusClassCounts = new int[DashboardAggregate.STATUS_CLASSES.length];
+    private final SizeHistogram[] statusClassSizes = new SizeHistogram[DashboardAggregate.STATUS_CLASSES.length];
+    private final Map<String, Integer> methods = new LinkedHashMap<>();
+    private final Map<String, Integer> countries = new LinkedHashMap<>();
+    private final TopK ips = new TopK(DashboardAggregate.TOP_CAPACITY);
+    private final TopK paths = new TopK(DashboardAggregate.TOP_CAPACITY, true);
+    private final TopK userAgents = new TopK(DashboardAggregate.TOP_CAPACITY);
+    private final TopK rules = new TopK(DashboardAggregate.TOP_CAPACITY);
+
+    /**
+     * @param first: first day of the range
+     * @param last: last day of the range, included
+     */
+    public DashboardRange(LocalDate first, LocalDate last) {
+        this.first = first;
+        this.last = last;
+        for (int statusClass = 0; statusClass < statusClassSizes.length; statusClass++) {
+            statusClassSizes[statusClass] = new SizeHistogram();
+        }
+    }
+
+    /**
+     * Adds a day of the range, days must be added in order.
+     */
+    public void add(DashboardAggregate day) {
+        days.add(day.series());
+        for (DashboardAggregate.Ranked statusClass : day.statusClassRanking()) {
+            statusClassCounts[indexOf(statusClass.name())] += statusClass.count();
+        }
+        addAll(methods, day.methodRanking());
+        addAll(countries, day.countryRanking());
+        day.mergeRankingsInto(ips, paths, userAgents, rules, statusClassSizes);
+    }
+
+    private static int indexOf(String statusClass) {
+        return List.of(DashboardAggregate.STATUS_CLASSES).indexOf(statusClass);
+    }
+
+    private static void addAll(Map<String, Integer> totals, List<DashboardAggregate.Ranked> ranking) {
+        for (DashboardAggregate.Ranked entry : ranking) {
+            totals.merge(entry.name(), entry.count(), Integer::sum);
+        }
+    }
+
+    public LocalDate getFirst() {
+        return first;
+    }
+
+    public LocalDate getLast() {
+        return last;
+    }
+
+    public boolean isSingleDay() {
+        return first.equals(last);
+    }
+
+    /**
+     * Re-buckets the days added, in memory.
+     * @param slotMillisOf: length of the intervals of a day, as for DashboardAggregate.slots
+     * @return the intervals with requests of all the days added, in time order
+     */
+    public List<DashboardAggregate.Slot> slots(ToLongFunction<LocalDate> slotMillisOf) {
+        List<DashboardAggregate.Slot> slots = new ArrayList<>();
+        for (DaySeries day : days) {
+            slots.addAll(day.slots(slotMillisOf.applyAsLong(day.getDay())));
+        }
+        return slots;
+    }
+
+    /**
+     * @return the status classes by decreasing number of requests with the sizes of their responses,
+     * the classes without any are left out
+     */
+    public List<DashboardAggregate.Ranked> statusClassRanking() {
+        List<DashboardAggregate.Ranked> ranking = new ArrayList<>();
+        for (int statusClass = 0; statusClass < statusClassCounts.length; statusClass++) {
+            if (statusClassCounts[statusClass] > 0) {
+                ranking.add(new DashboardAggregate.Ranked(DashboardAggregate.STATUS_CLASSES[statusClass],
+                        statusClassCounts[statusClass], 0, null, statusClassSizes[statusClass].summary()));
+            }
+        }
+        return sorted(ranking);
+    }
+
+    public List<DashboardAggregate.Ranked> methodRanking() {
+        return ranked(methods);
+    }
+
+    public List<DashboardAggregate.Ranked> countryRanking() {
+        return ranked(countries);
+    }
+
+    /**
+     * @return the busiest IPs of the range by decreasing number of requests, at most limit of them, with their country as detail
+     */
+    public List<DashboardAggregate.Ranked> ipRanking(int limit) {
+        return ips.ranking(limit);
+    }
+
+    /**
+     * @return the most requested paths of the range, at most limit of them, with the sizes of their responses
+     */
+    public List<DashboardAggregate.Ranked> pathRanking(int limit) {
+        return paths.ranking(limit);
+    }
+
+    public List<DashboardAggregate.Ranked> userAgentRanking(int limit) {
+        return userAgents.ranking(limit);
+    }
+
+    public List<DashboardAggregate.Ranked> ruleRanking(int limit) {
+        return rules.ranking(limit);
+    }
+
+    private static List<DashboardAggregate.Ranked> ranked(Map<String, Integer> totals) {
+        List<DashboardAggregate.Ranked> ranking = new ArrayList<>();
+        for (Map.Entry<String, Integer> total : totals.entrySet()) {
+            if (total.getValue() > 0) {
+                ranking.add(new DashboardAggregate.Ranked(total.getKey(), total.getValue(), 0, null, null));
+            }
+        }
+        return sorted(ranking);
+    }
+
+    private static List<DashboardAggregate.Ranked> sorted(List<DashboardAggregate.Ranked> ranking) {
+        ranking.sort(Comparator.comparingInt(DashboardAggregate.Ranked::count).reversed());
+        return ranking;
+    }
+}
@@ -0,0 +1,72 @@
+package stats;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The part of a day aggregate the line chart is drawn from: requests per status class and minute,
+ * and the sketches per quarter hour. It re-buckets into any interval in memory, and is all
+ * DashboardRange keeps of a day to redraw the chart, at most a few hundred kilobytes.
+ */
+final class DaySeries {
+    private static final long MINUTE_MILLIS = 60_000L;
+
+    private final LocalDate day;
+    private final long dayStart;
+    private final int minutes;
+    private final MinuteCounts statuses;
+    private final QuarterHourSketches<HyperLogLog> distinctIps;
+    private final QuarterHourSketches<HyperLogLog> distinctPaths;
+    private final QuarterHourSketches<HyperLogLog> distinctUserAgents;
+    private final QuarterHourSketches<SizeHistogram> sizes;
+
+    /**
+     * @param statuses: requests per minute of every status class, indexed like STATUS_CLASSES
+     */
+    DaySeries(LocalDate day, long dayStart, int minutes, MinuteCounts statuses,
+              QuarterHourSketches<HyperLogLog> distinctIps, QuarterHourSketches<HyperLogLog> distinctPaths,
+              QuarterHourSketches<HyperLogLog> distinctUserAgents, QuarterHourSketches<SizeHistogram> sizes) {
+        this.day = day;
+        this.dayStart = dayStart;
+        this.minutes = minutes;
+        this.statuses = statuses;
+        this.distinctIps = distinctIps;
+        this.distinctPaths = distinctPaths;
+        this.distinctUserAgents = distinctUserAgents;
+        this.sizes = sizes;
+    }
+
+    LocalDate getDay() {
+        return day;
+    }
+
+    /**
+     * Re-buckets the minutes into intervals starting at midnight, the intervals without requests are left out.
+     * Distinct counts and sizes are kept per quarter hour, so they cover the quarter hours the interval overlaps.
+     * @param slotMillis: length of an interval, a multiple of a minute
+     */
+    List<DashboardAggregate.Slot> slots(long slotMillis) {
+        int slotMinutes = (int) Math.max(1, slotMillis / MINUTE_MILLIS);
+        int statusClasses = DashboardAggregate.STATUS_CLASSES.length;
+        List<DashboardAggregate.Slot> slots = new ArrayList<>();
+        for (int first = 0; first < minutes; first += slotMinutes) {
+            int[] statusCounts = new int[statusClasses];
+            int total = 0;
+            int last = Math.min(minutes, first + slotMinutes);
+            for (int minute = first; minute < last; minute++) {
+                for (int statusClass = 0; statusClass < statusClasses; statusClass++) {
+                    int count = statuses.count(statusClass, minute);
+                    statusCounts[statusClass] += count;
+                    total += count;
+                }
+            }
+            if (total > 0) {
+                slots.add(new DashboardAggregate.Slot(dayStart + first * MINUTE_MILLIS, statusCounts,
+                        distinctIps.union(first, last).estimate(), distinctPaths.union(first, last).estimate(),
+                        distinctUserAgents.union(first, last).estimate(), sizes.union(first, last).summary()));
+            }
+        }
+        return slots;
+    }
+}
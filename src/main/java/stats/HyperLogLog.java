@@ -0,0 +1,83 @@
+package stats;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * HyperLogLog estimate of the number of distinct values of a stream, in 2^PRECISION bytes whatever
+ * the number of values (about 3% standard error). Sketches merge by taking the maximum of every
+ * register, so sketches of small intervals roll up to any longer interval they cover.
+ * Not thread-safe.
+ */
+final class HyperLogLog implements Sketch<HyperLogLog> {
+    private static final int PRECISION = 10;
+    private static final int REGISTERS = 1 << PRECISION;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+    private final byte[] registers = new byte[REGISTERS];
+
+    /**
+     * @return a 64-bit hash of text[start, end), the same for equal character sequences
+     */
+    static long hash(CharSequence text, int start, int end) {
+        // FNV-1a over the characters, then the murmur3 finalizer to spread them over all the bits
+        long hash = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ text.charAt(i)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    void add(long hash) {
+        int register = (int) (hash >>> (Long.SIZE - PRECISION));
+        // the marker bit bounds the rank when the remaining bits are all zeros
+        byte rank = (byte) (Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1);
+        if (registers[register] < rank) {
+            registers[register] = rank;
+        }
+    }
+
+    @Override
+    public HyperLogLog merge(HyperLogLog other) {
+        for (int register = 0; register < REGISTERS; register++) {
+            if (registers[register] < other.registers[register]) {
+                registers[register] = other.registers[register];
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @return the estimated number of distinct values added
+     */
+    long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte rank : registers) {
+            sum += 1.0 / (1L << rank);
+            zeros += rank == 0 ? 1 : 0;
+        }
+        double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+        if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+            // linear counting is more accurate while many registers are still empty
+            estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    @Override
+    public void write(DataOutputStream out) throws IOException {
+        out.write(registers);
+    }
+
+    @Override
+    public void read(DataInputStream in) throws IOException {
+        in.readFully(registers);
+    }
+}
@@ -0,0 +1,133 @@
+package stats;
+
+import loganalyzer.StringDictionary;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Counts per value and minute of the day for one dimension of the requests (status class, method,
+ * country, rule...). Values are dictionary-encoded and every value gets a dense array of minutes,
+ * allocated the first time it is counted.
+ * Once maxNames distinct values were seen, new ones are counted under OTHER, so junk values
+ * (e.g. garbage methods sent by a scanner) cannot grow the counts without bound.
+ * Not thread-safe, partial counts are filled one per thread and merged.
+ */
+final class MinuteCounts {
+    static final String OTHER = "Other";
+
+    private final int minutes;
+    private final int maxNames;
+    private final StringDictionary names = new StringDictionary();
+    private int[][] counts = new int[8][];
+
+    /**
+     * @param initialNames: values given the first ids, in this order
+     */
+    MinuteCounts(int minutes, int maxNames, String... initialNames) {
+        this.minutes = minutes;
+        this.maxNames = maxNames;
+        for (String name : initialNames) {
+            names.idOf(name);
+        }
+    }
+
+    int idOf(String name) {
+        if (names.size() < maxNames) {
+            return names.idOf(name);
+        }
+        int id = names.find(name);
+        return id >= 0 ? id : names.idOf(OTHER);
+    }
+
+    void add(int id, int minute, int count) {
+        if (id >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(id + 1, counts.length * 2));
+        }
+        if (counts[id] == null) {
+            counts[id] = new int[minutes];
+        }
+        counts[id][minute] += count;
+    }
+
+    int size() {
+        return names.size();
+    }
+
+    String nameOf(int id) {
+        return names.valueOf(id);
+    }
+
+    int count(int id, int minute) {
+        return id < counts.length && counts[id] != null ? counts[id][minute] : 0;
+    }
+
+    int total(int id) {
+        int total = 0;
+        if (id < counts.length && counts[id] != null) {
+            for (int count : counts[id]) {
+                total += count;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Adds the counts of another partial of the same day, matching values by name.
+     * @return mapping from the other's ids to ids in this one
+     */
+    int[] merge(MinuteCounts other) {
+        int[] mapping = new int[other.size()];
+        for (int otherId = 0; otherId < mapping.length; otherId++) {
+            int id = idOf(other.nameOf(otherId));
+            mapping[otherId] = id;
+            if (otherId < other.counts.length && other.counts[otherId] != null) {
+                int[] otherCounts = other.counts[otherId];
+                for (int minute = 0; minute < minutes; minute++) {
+                    if (otherCounts[minute] != 0) {
+                        add(id, minute, otherCounts[minute]);
+                    }
+                }
+            }
+        }
+        return mapping;
+    }
+
+    /**
+     * Writes the names in id order, then the minutes with a count of every name.
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(names.size());
+        for (int id = 0; id < names.size(); id++) {
+            RollupStore.writeString(out, names.valueOf(id));
+            int nonEmpty = 0;
+            for (int minute = 0; minute < minutes; minute++) {
+                nonEmpty += count(id, minute) != 0 ? 1 : 0;
+            }
+            out.writeShort(nonEmpty);
+            for (int minute = 0; minute < minutes; minute++) {
+                int count = count(id, minute);
+                if (count != 0) {
+                    out.writeShort(minute);
+                    out.writeInt(count);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads what write() wrote, the names keep their ids.
+     */
+    void read(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            int id = names.idOf(RollupStore.readString(in));
+            int nonEmpty = in.readUnsignedShort();
+            for (int j = 0; j < nonEmpty; j++) {
+                add(id, in.readUnsignedShort(), in.readInt());
+            }
+        }
+    }
+}
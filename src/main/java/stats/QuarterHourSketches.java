@@ -0,0 +1,96 @@
+package stats;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * One sketch per quarter hour of the day for one measure of the requests (distinct IPs, response
+ * sizes...), allocated the first time its quarter hour gets a value. The sketch of any interval
+ * made of whole quarter hours is the merge of theirs, so a day never takes more than about 100
+ * sketches, however many requests it has.
+ * Not thread-safe, partial sketches are filled one per thread and merged.
+ */
+final class QuarterHourSketches<S extends Sketch<S>> {
+    static final int QUARTER_MINUTES = 15;
+
+    private final Supplier<S> newSketch;
+    private final List<S> quarters;
+
+    QuarterHourSketches(int minutes, Supplier<S> newSketch) {
+        this.newSketch = newSketch;
+        this.quarters = new ArrayList<>(Collections.nCopies((minutes + QUARTER_MINUTES - 1) / QUARTER_MINUTES, null));
+    }
+
+    /**
+     * @return the sketch of the quarter hour of the minute, to add values to
+     */
+    S at(int minute) {
+        int quarter = minute / QUARTER_MINUTES;
+        S sketch = quarters.get(quarter);
+        if (sketch == null) {
+            sketch = newSketch.get();
+            quarters.set(quarter, sketch);
+        }
+        return sketch;
+    }
+
+    /**
+     * @return a new sketch of the quarter hours overlapping [firstMinute, lastMinute)
+     */
+    S union(int firstMinute, int lastMinute) {
+        S union = newSketch.get();
+        int lastQuarter = Math.min(quarters.size(), (lastMinute + QUARTER_MINUTES - 1) / QUARTER_MINUTES);
+        for (int quarter = firstMinute / QUARTER_MINUTES; quarter < lastQuarter; quarter++) {
+            if (quarters.get(quarter) != null) {
+                union.merge(quarters.get(quarter));
+            }
+        }
+        return union;
+    }
+
+    /**
+     * Adds the values of another partial of the same day into this one.
+     */
+    void merge(QuarterHourSketches<S> other) {
+        for (int quarter = 0; quarter < quarters.size(); quarter++) {
+            if (other.quarters.get(quarter) != null) {
+                at(quarter * QUARTER_MINUTES).merge(other.quarters.get(quarter));
+            }
+        }
+    }
+
+    /**
+     * Writes the quarter hours with a sketch, each with its index.
+     */
+    void write(DataOutputStream out) throws IOException {
+        int nonEmpty = 0;
+        for (S quarter : quarters) {
+            nonEmpty += quarter != null ? 1 : 0;
+        }
+        out.writeShort(nonEmpty);
+        for (int quarter = 0; quarter < quarters.size(); quarter++) {
+            if (quarters.get(quarter) != null) {
+                out.writeShort(quarter);
+                quarters.get(quarter).write(out);
+            }
+        }
+    }
+
+    void read(DataInputStream in) throws IOException {
+        int nonEmpty = in.readUnsignedShort();
+        for (int i = 0; i < nonEmpty; i++) {
+            int quarter = in.readUnsignedShort();
+            if (quarter >= quarters.size()) {
+                throw new IOException("Quarter hour " + quarter + " is outside the day");
+            }
+            S sketch = newSketch.get();
+            sketch.read(in);
+            quarters.set(quarter, sketch);
+        }
+    }
+}
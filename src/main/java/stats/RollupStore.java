@@ -0,0 +1,376 @@
+package stats;
+
+import entrypoint.Config;
+import loganalyzer.ApacheLineTokenizer;
+import loganalyzer.ApacheParser;
+import loganalyzer.DayOffsetIndex;
+import loganalyzer.LogFileScanner;
+import loganalyzer.ModSecurity;
+import loganalyzer.ModSecurityParser;
+import loganalyzer.RotatedLogFiles;
+import loganalyzer.StringDictionary;
+import loganalyzer.TimestampDecoder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.UnaryOperator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Per-minute rollups of the log days, persisted in the config directory so the dashboard can show
+ * any day without reading its lines again.
+ * A rollup remembers the byte ranges of the Apache and ModSecurity files it was built from. When
+ * the live files grew, only the appended bytes are read and added to it; when they were rotated
+ * or truncated in a way that moved the day, it is rebuilt. A day is sealed once both logs have
+ * lines of a later day, and its rollup is then served as is.
+ * A background thread keeps the newest day up to date and builds the rollups of the days that
+ * have none yet, newest first.
+ */
+public final class RollupStore {
+    private RollupStore() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    private static final Logger logger = Logger.getLogger(RollupStore.class.getName());
+    private static final int FORMAT_VERSION = 5;
+    private static final String FILE_SUFFIX = ".rollup";
+    private static final int MAX_CACHED_COUNTRIES = 1 << 16;
+    private static final int MAX_STRING_BYTES = 1 << 24;
+    private static final long REFRESH_PERIOD_SECONDS = 60;
+    private static final ThreadLocal<ApacheLineTokenizer> tokenizer =
+            ThreadLocal.withInitial(ApacheLineTokenizer::new);
+    private static final AtomicBoolean maintained = new AtomicBoolean();
+    private static final ScheduledExecutorService maintainer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "rollup-maintenance");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Part of a log file a rollup was built from.
+     * @param to: end of the range read, for a compressed file its size
+     * @param modified: modification time of a compressed file, 0 otherwise
+     */
+    private record Covered(String path, long from, long to, boolean compressed, long modified) {
+    }
+
+    /**
+     * @param apache: what was read from the Apache files
+     * @param modSecurity: what was read from the ModSecurity files
+     */
+    private record Rollup(boolean sealed, List<Covered> apache, List<Covered> modSecurity,
+                          DashboardAggregate aggregate) {
+    }
+
+    /**
+     * Where one of the logs currently has the lines of a day.
+     */
+    private record Source(List<Path> files, List<LogFileScanner.Segment> segments) {
+    }
+
+    /**
+     * Returns the aggregate of a day, from its rollup when it is up to date, after reading the lines
+     * appended since or all the lines of the day otherwise. Must not be called on the JavaFX application thread.
+     * @param countryOf: country of an IP address, called once per address new to the day
+     */
+    public static synchronized DashboardAggregate dayOf(LocalDate day, UnaryOperator<String> countryOf) {
+        Path rollupPath = rollupPath(day);
+        Rollup stored = read(rollupPath, day, countryOf);
+        if (stored != null && stored.sealed()) {
+            return stored.aggregate();
+        }
+        UnaryOperator<String> cachedCountryOf = cached(countryOf);
+        try {
+            Source apache = sourceOf(Paths.get(Config.getApacheLogLocation()), day, ApacheParser::parseDay);
+            Source modSecurity = sourceOf(Paths.get(Config.getModSecurityLogLocation()), day,
+                    ModSecurityParser::parseDay);
+            List<Covered> apacheCovered = coveredOf(apache.segments());
+            List<Covered> modSecurityCovered = coveredOf(modSecurity.segments());
+            boolean sealed = isSealed(apache, day, ApacheParser::parseDay)
+                    && isSealed(modSecurity, day, ModSecurityParser::parseDay);
+            DashboardAggregate aggregate;
+            List<LogFileScanner.Segment> apacheAppended = stored == null ? null
+                    : appended(stored.apache(), apache.segments(), apacheCovered);
+            List<LogFileScanner.Segment> modSecurityAppended = stored == null ? null
+                    : appended(stored.modSecurity(), modSecurity.segments(), modSecurityCovered);
+            if (apacheAppended != null && modSecurityAppended != null) {
+                if (apacheAppended.isEmpty() && modSecurityAppended.isEmpty() && sealed == stored.sealed()) {
+                    return stored.aggregate();
+                }
+                aggregate = stored.aggregate().merge(scan(day, apacheAppended, modSecurityAppended, cachedCountryOf));
+            } else {
+                logger.log(Level.FINE, "Building the rollup of {0}", day);
+                aggregate = scan(day, apache.segments(), modSecurity.segments(), cachedCountryOf);
+            }
+            write(rollupPath, new Rollup(sealed, apacheCovered, modSecurityCovered, aggregate));
+            return aggregate;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to perform IO activities on log file.");
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Starts keeping the rollups up to date in the background, once per application run.
+     */
+    public static void startMaintenance(UnaryOperator<String> countryOf) {
+        if (maintained.compareAndSet(false, true)) {
+            maintainer.scheduleWithFixedDelay(() -> maintain(countryOf), 0, REFRESH_PERIOD_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Extends the rollup of the newest day, then builds the missing rollups of the older days.
+     */
+    private static void maintain(UnaryOperator<String> countryOf) {
+        try {
+            List<Path> files = RotatedLogFiles.discover(Paths.get(Config.getApacheLogLocation()));
+            TreeSet<LocalDate> days = new TreeSet<>();
+            for (Path file : files) {
+                if (!RotatedLogFiles.isCompressed(file)) {
+                    DayOffsetIndex index = DayOffsetIndex.forFile(file, ApacheParser::parseDay);
+                    for (LocalDate day = index.firstDay(); day != null && !day.isAfter(index.lastDay());
+                         day = day.plusDays(1)) {
+                        if (index.rangeOf(day) != null) {
+                            days.add(day);
+                        }
+                    }
+                }
+            }
+            for (LocalDate day : days.descendingSet()) {
+                if (day.equals(days.last()) || !Files.exists(rollupPath(day))) {
+                    dayOf(day, countryOf);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "Failed to maintain the log rollups.", e);
+        }
+    }
+
+    private static Source sourceOf(Path logPath, LocalDate day, DayOffsetIndex.DayReader dayReader)
+            throws IOException {
+        List<Path> files = RotatedLogFiles.discover(logPath);
+        return new Source(files, files.isEmpty() ? List.of()
+                : RotatedLogFiles.segmentsFor(files, day, dayReader));
+    }
+
+    /**
+     * A log is done with a day once its newest file has lines of a later day, or when it has no live file.
+     */
+    private static boolean isSealed(Source source, LocalDate day, DayOffsetIndex.DayReader dayReader)
+            throws IOException {
+        if (!day.isBefore(LocalDate.now())) {
+            return false;
+        }
+        if (source.files().isEmpty() || RotatedLogFiles.isCompressed(source.files().get(0))) {
+            return true;
+        }
+        LocalDate lastDay = DayOffsetIndex.forFile(source.files().get(0), dayReader).lastDay();
+        return lastDay != null && lastDay.isAfter(day);
+    }
+
+    private static List<Covered> coveredOf(List<LogFileScanner.Segment> segments) throws IOException {
+        List<Covered> covered = new ArrayList<>();
+        for (LogFileScanner.Segment segment : segments) {
+            Path path = segment.getPath();
+            long size = Files.size(path);
+            if (segment.isCompressed()) {
+                covered.add(new Covered(path.toString(), 0, size, true,
+                        Files.getLastModifiedTime(path).toMillis()));
+            } else {
+                covered.add(new Covered(path.toString(), segment.getFrom(), Math.min(segment.getTo(), size),
+                        false, 0));
+            }
+        }
+        return covered;
+    }
+
+    /**
+     * @return the parts of the segments that were appended since the rollup was built, or null when the
+     * segments do not extend what the rollup covered and the day must be read again
+     */
+    private static List<LogFileScanner.Segment> appended(List<Covered> stored, List<LogFileScanner.Segment> segments,
+                                                         List<Covered> current) {
+        if (stored.size() != current.size()) {
+            return null;
+        }
+        List<LogFileScanner.Segment> appended = new ArrayList<>();
+        for (int i = 0; i < stored.size(); i++) {
+            Covered before = stored.get(i);
+            Covered now = current.get(i);
+            if (before.compressed() || now.compressed()) {
+                if (!before.equals(now)) {
+                    return null;
+                }
+            } else if (!before.path().equals(now.path()) || before.from() != now.from() || now.to() < before.to()) {
+                return null;
+            } else if (now.to() > before.to()) {
+                appended.add(LogFileScanner.Segment.of(segments.get(i).getPath(), before.to(), now.to()));
+            }
+        }
+        return appended;
+    }
+
+    /**
+     * Aggregates the lines of the day found in the segments, in one parallel pass over each log.
+     */
+    private static DashboardAggregate scan(LocalDate day, List<LogFileScanner.Segment> apacheSegments,
+                                           List<LogFileScanner.Segment> modSecuritySegments,
+                                           UnaryOperator<String> countryOf) throws IOException {
+        long epochDay = day.toEpochDay();
+        DashboardAggregate requests = LogFileScanner.scan(apacheSegments, () -> new DashboardAggregate(day, countryOf),
+                (partial, line, start, end) -> {
+                    ApacheLineTokenizer lineTokenizer = tokenizer.get();
+                    if (!lineTokenizer.tokenize(line) || TimestampDecoder.toLocalEpochDay(lineTokenizer.line(),
+                            lineTokenizer.start(ApacheLineTokenizer.TIMESTAMP),
+                            lineTokenizer.end(ApacheLineTokenizer.TIMESTAMP)) != epochDay) {
+                        return;
+                    }
+                    try {
+                        partial.addRequest(lineTokenizer);
+                    } catch (NumberFormatException e) {
+                        logger.log(Level.FINE, "Skipped malformed log line: {0}", line);
+                    }
+                },
+                DashboardAggregate::merge);
+        // rule names are counted by value, so entries need no interning, and a dictionary that
+        // never grows can be shared by the threads
+        StringDictionary noInterning = new StringDictionary(0);
+        DashboardAggregate matches = LogFileScanner.scan(modSecuritySegments, () -> new DashboardAggregate(day, countryOf),
+                (partial, line, start, end) -> {
+                    ModSecurity entry = ModSecurityParser.parseLineOnDate(line, day, noInterning);
+                    if (entry != null) {
+                        partial.addRule(entry.getTimestamp(), entry.getAttackName());
+                    }
+                },
+                DashboardAggregate::merge);
+        return requests.merge(matches);
+    }
+
+    /**
+     * Looks the addresses up once per build, however many chunks of the files they appear in.
+     * Past MAX_CACHED_COUNTRIES addresses, new ones are looked up without being remembered.
+     */
+    private static UnaryOperator<String> cached(UnaryOperator<String> countryOf) {
+        Map<String, String> countries = new ConcurrentHashMap<>();
+        return ip -> {
+            String country = countries.get(ip);
+            if (country == null) {
+                country = countryOf.apply(ip);
+                if (country != null && countries.size() < MAX_CACHED_COUNTRIES) {
+                    countries.put(ip, country);
+                }
+            }
+            return country;
+        };
+    }
+
+    /**
+     * Rollups of different log locations are kept apart, so changing them in the options does not mix days.
+     */
+    private static Path rollupPath(LocalDate day) {
+        String logPaths = Paths.get(Config.getApacheLogLocation()).toAbsolutePath().normalize() + "|"
+                + Paths.get(Config.getModSecurityLogLocation()).toAbsolutePath().normalize();
+        return Paths.get(Config.getRollupDirPath(), Integer.toHexString(logPaths.hashCode()), day + FILE_SUFFIX);
+    }
+
+    /**
+     * @return the stored rollup, or null when there is none or it cannot be used
+     */
+    private static Rollup read(Path rollupPath, LocalDate day, UnaryOperator<String> countryOf) {
+        if (!Files.exists(rollupPath)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(rollupPath)))) {
+            if (in.readInt() != FORMAT_VERSION || in.readLong() != day.toEpochDay()) {
+                return null;
+            }
+            boolean sealed = in.readBoolean();
+            List<Covered> apache = readCovered(in);
+            List<Covered> modSecurity = readCovered(in);
+            return new Rollup(sealed, apache, modSecurity, DashboardAggregate.read(day, countryOf, in));
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "Rollup " + rollupPath + " is unreadable, it will be rebuilt.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the rollup next to its final name first, so a crash never leaves half a file behind.
+     */
+    private static void write(Path rollupPath, Rollup rollup) {
+        Path temporary = rollupPath.resolveSibling(rollupPath.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(rollupPath.getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(rollup.aggregate().getDay().toEpochDay());
+                out.writeBoolean(rollup.sealed());
+                writeCovered(out, rollup.apache());
+                writeCovered(out, rollup.modSecurity());
+                rollup.aggregate().write(out);
+            }
+            Files.move(temporary, rollupPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to save rollup " + rollupPath + ", it will be rebuilt next time.", e);
+        }
+    }
+
+    private static void writeCovered(DataOutputStream out, List<Covered> covered) throws IOException {
+        out.writeInt(covered.size());
+        for (Covered part : covered) {
+            writeString(out, part.path());
+            out.writeLong(part.from());
+            out.writeLong(part.to());
+            out.writeBoolean(part.compressed());
+            out.writeLong(part.modified());
+        }
+    }
+
+    private static List<Covered> readCovered(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        List<Covered> covered = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            covered.add(new Covered(readString(in), in.readLong(), in.readLong(), in.readBoolean(), in.readLong()));
+        }
+        return covered;
+    }
+
+    /**
+     * Length-prefixed UTF-8, unlike writeUTF it has no 64 KB limit.
+     */
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_STRING_BYTES) {
+            throw new IOException("Corrupted string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
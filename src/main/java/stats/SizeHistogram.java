@@ -0,0 +1,137 @@
+package stats;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Log-linear histogram of response sizes, in the manner of an HDR histogram: sizes below
+ * 2^SUB_BITS get a bucket each, and every power of two above is split into 2^SUB_BITS buckets of
+ * equal width, so a percentile read back is within about 1.6% of the true size. Only the buckets
+ * between the smallest and the largest size seen are allocated, so a path always answering the
+ * same page takes a single bucket, and no histogram takes more than about 2000.
+ * Histograms merge by adding their buckets, exactly. Not thread-safe.
+ */
+final class SizeHistogram implements Sketch<SizeHistogram> {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private int firstBucket;
+    private long[] counts = new long[0];
+    private long count;
+    private long bytes;
+
+    /**
+     * @param size: a size in bytes, negative sizes are counted as 0
+     */
+    void add(long size) {
+        long value = Math.max(0, size);
+        int bucket = bucketOf(value);
+        addToBucket(bucket, 1);
+        count++;
+        bytes += value;
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the middle of the sizes counted in a bucket
+     */
+    private static long valueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + ((1L << shift) >>> 1);
+    }
+
+    private void addToBucket(int bucket, long bucketCount) {
+        if (counts.length == 0) {
+            firstBucket = bucket;
+            counts = new long[1];
+        } else if (bucket < firstBucket) {
+            long[] grown = new long[counts.length + firstBucket - bucket];
+            System.arraycopy(counts, 0, grown, firstBucket - bucket, counts.length);
+            counts = grown;
+            firstBucket = bucket;
+        } else if (bucket >= firstBucket + counts.length) {
+            counts = Arrays.copyOf(counts, bucket - firstBucket + 1);
+        }
+        counts[bucket - firstBucket] += bucketCount;
+    }
+
+    /**
+     * @param quantile: between 0 and 1, e.g. 0.95 for the 95th percentile
+     * @return the size that this fraction of the sizes do not exceed, 0 when there are none
+     */
+    long quantile(double quantile) {
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return valueOf(firstBucket + i);
+            }
+        }
+        return 0;
+    }
+
+    DashboardAggregate.Sizes summary() {
+        return new DashboardAggregate.Sizes(count, bytes, quantile(0.5), quantile(0.95), quantile(0.99));
+    }
+
+    @Override
+    public SizeHistogram merge(SizeHistogram other) {
+        for (int i = 0; i < other.counts.length; i++) {
+            if (other.counts[i] != 0) {
+                addToBucket(other.firstBucket + i, other.counts[i]);
+            }
+        }
+        count += other.count;
+        bytes += other.bytes;
+        return this;
+    }
+
+    /**
+     * Writes the totals, then the buckets with a count.
+     */
+    @Override
+    public void write(DataOutputStream out) throws IOException {
+        out.writeLong(count);
+        out.writeLong(bytes);
+        int nonEmpty = 0;
+        for (long bucketCount : counts) {
+            nonEmpty += bucketCount != 0 ? 1 : 0;
+        }
+        out.writeShort(nonEmpty);
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                out.writeShort(firstBucket + i);
+                out.writeLong(counts[i]);
+            }
+        }
+    }
+
+    @Override
+    public void read(DataInputStream in) throws IOException {
+        count = in.readLong();
+        bytes = in.readLong();
+        int nonEmpty = in.readUnsignedShort();
+        for (int i = 0; i < nonEmpty; i++) {
+            int bucket = in.readUnsignedShort();
+            if (bucket > bucketOf(Long.MAX_VALUE)) {
+                throw new IOException("Invalid size bucket " + bucket);
+            }
+            addToBucket(bucket, in.readLong());
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package stats;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Summary of the values of part of a stream, which merges with the summary of another part, e.g.
+ * of another chunk of the files or of another quarter hour.
+ */
+interface Sketch<S extends Sketch<S>> {
+    /**
+     * Adds the values summarized by other into this sketch.
+     */
+    S merge(S other);
+
+    void write(DataOutputStream out) throws IOException;
+
+    /**
+     * Reads what write() wrote into an empty sketch.
+     */
+    void read(DataInputStream in) throws IOException;
+}
@@ -0,0 +1,284 @@
+package stats;
+
+import loganalyzer.StringDictionary;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving summary of the most frequent values of a stream, in memory bounded by its capacity.
+ * As long as at most capacity distinct values were seen, the counts are exact. Past that, only the
+ * capacity most counted values are kept, and a value showing up again after it was dropped inherits
+ * the smallest kept count as overestimation: every count is then an upper bound that exceeds the
+ * true count by at most its error, and every value seen more than total / capacity times is kept.
+ * Occurrences are first counted exactly in a small dictionary, read straight from the line, and
+ * merged into the summary when it fills up, so counting a line allocates nothing. Summaries of
+ * partial streams merge the same way, with the same guarantees.
+ * Values may also keep a histogram of the sizes of their responses. A value dropped and kept again
+ * only has the sizes counted since.
+ * Not thread-safe, partial summaries are filled one per thread and merged.
+ */
+final class TopK {
+    private static final int PENDING_LIMIT = 1 << 14;
+
+    private final int capacity;
+    // kept values by decreasing count
+    private String[] values = new String[0];
+    private String[] details = new String[0];
+    private long[] counts = new long[0];
+    private long[] errors = new long[0];
+    // null when sizes are not kept
+    private SizeHistogram[] sizes;
+    private int size;
+    private boolean exact = true;
+
+    private StringDictionary pending = new StringDictionary();
+    private long[] pendingCounts = new long[64];
+    private String[] pendingDetails = new String[64];
+    private SizeHistogram[] pendingSizes;
+
+    TopK(int capacity) {
+        this(capacity, false);
+    }
+
+    /**
+     * @param withSizes: whether every value keeps a histogram of response sizes, see addSize
+     */
+    TopK(int capacity, boolean withSizes) {
+        this.capacity = capacity;
+        if (withSizes) {
+            sizes = new SizeHistogram[0];
+            pendingSizes = new SizeHistogram[64];
+        }
+    }
+
+    /**
+     * Counts one occurrence of text[start, end).
+     * @return the id of the value until the next call, for pendingDetail and setPendingDetail
+     */
+    int add(CharSequence text, int start, int end) {
+        if (pending.size() >= PENDING_LIMIT) {
+            flush();
+        }
+        int id = pending.idOf(text, start, end);
+        if (id >= pendingCounts.length) {
+            pendingCounts = Arrays.copyOf(pendingCounts, pendingCounts.length * 2);
+            pendingDetails = Arrays.copyOf(pendingDetails, pendingDetails.length * 2);
+            if (pendingSizes != null) {
+                pendingSizes = Arrays.copyOf(pendingSizes, pendingSizes.length * 2);
+            }
+        }
+        pendingCounts[id]++;
+        return id;
+    }
+
+    int add(String value) {
+        return add(value, 0, value.length());
+    }
+
+    /**
+     * @return what was attached to the value, e.g. the country of an IP, null when nothing was
+     */
+    String pendingDetail(int id) {
+        return pendingDetails[id];
+    }
+
+    void setPendingDetail(int id, String detail) {
+        pendingDetails[id] = detail;
+    }
+
+    /**
+     * Counts the size of the response of the occurrence just added, for a summary keeping sizes.
+     */
+    void addSize(int id, long bytes) {
+        if (pendingSizes[id] == null) {
+            pendingSizes[id] = new SizeHistogram();
+        }
+        pendingSizes[id].add(bytes);
+    }
+
+    private void flush() {
+        if (pending.size() == 0) {
+            return;
+        }
+        String[] pendingValues = new String[pending.size()];
+        for (int id = 0; id < pendingValues.length; id++) {
+            pendingValues[id] = pending.valueOf(id);
+        }
+        absorb(pendingValues, pendingCounts, new long[pendingValues.length], pendingDetails, pendingSizes,
+                pendingValues.length, 0, true);
+        pending = new StringDictionary();
+        pendingCounts = new long[64];
+        pendingDetails = new String[64];
+        if (pendingSizes != null) {
+            pendingSizes = new SizeHistogram[64];
+        }
+    }
+
+    /**
+     * @return the count a value missing from the summary may have had at most
+     */
+    private long floor() {
+        return exact || size == 0 ? 0 : counts[size - 1];
+    }
+
+    /**
+     * Adds the occurrences counted by another summary into this one.
+     */
+    TopK merge(TopK other) {
+        flush();
+        other.flush();
+        absorb(other.values, other.counts, other.errors, other.details, other.sizes, other.size, other.floor(),
+                other.exact);
+        return this;
+    }
+
+    /**
+     * Sums the counts of both sides over the union of their values and keeps the capacity largest.
+     * A value missing from one side counts as that side's floor, both in its count and its error.
+     * @param otherSizes: ignored when this summary does not keep sizes
+     */
+    private void absorb(String[] otherValues, long[] otherCounts, long[] otherErrors, String[] otherDetails,
+                        SizeHistogram[] otherSizes, int otherSize, long otherFloor, boolean otherExact) {
+        long floor = floor();
+        Map<String, Integer> slots = new HashMap<>(size * 2);
+        for (int slot = 0; slot < size; slot++) {
+            slots.put(values[slot], slot);
+        }
+        int unionSize = size;
+        String[] unionValues = Arrays.copyOf(values, size + otherSize);
+        String[] unionDetails = Arrays.copyOf(details, size + otherSize);
+        long[] unionCounts = Arrays.copyOf(counts, size + otherSize);
+        long[] unionErrors = Arrays.copyOf(errors, size + otherSize);
+        SizeHistogram[] unionSizes = sizes == null ? null : Arrays.copyOf(sizes, size + otherSize);
+        boolean[] inOther = new boolean[size];
+        for (int otherSlot = 0; otherSlot < otherSize; otherSlot++) {
+            Integer slot = slots.get(otherValues[otherSlot]);
+            if (slot != null) {
+                inOther[slot] = true;
+                unionCounts[slot] += otherCounts[otherSlot];
+                unionErrors[slot] += otherErrors[otherSlot];
+                if (unionDetails[slot] == null) {
+                    unionDetails[slot] = otherDetails[otherSlot];
+                }
+                if (unionSizes != null) {
+                    unionSizes[slot] = mergedSizes(unionSizes[slot], otherSizes, otherSlot);
+                }
+            } else {
+                unionValues[unionSize] = otherValues[otherSlot];
+                unionDetails[unionSize] = otherDetails[otherSlot];
+                unionCounts[unionSize] = otherCounts[otherSlot] + floor;
+                unionErrors[unionSize] = otherErrors[otherSlot] + floor;
+                if (unionSizes != null) {
+                    unionSizes[unionSize] = mergedSizes(null, otherSizes, otherSlot);
+                }
+                unionSize++;
+            }
+        }
+        for (int slot = 0; slot < size; slot++) {
+            if (!inOther[slot]) {
+                unionCounts[slot] += otherFloor;
+                unionErrors[slot] += otherFloor;
+            }
+        }
+        Integer[] order = new Integer[unionSize];
+        for (int i = 0; i < unionSize; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(unionCounts[b], unionCounts[a]));
+        exact = exact && otherExact && unionSize <= capacity;
+        size = Math.min(capacity, unionSize);
+        values = new String[size];
+        details = new String[size];
+        counts = new long[size];
+        errors = new long[size];
+        sizes = unionSizes == null ? null : new SizeHistogram[size];
+        for (int slot = 0; slot < size; slot++) {
+            int union = order[slot];
+            values[slot] = unionValues[union];
+            details[slot] = unionDetails[union];
+            counts[slot] = unionCounts[union];
+            errors[slot] = unionErrors[union];
+            if (sizes != null) {
+                sizes[slot] = unionSizes[union];
+            }
+        }
+    }
+
+    /**
+     * @return kept plus the sizes of the other side's value, copied so the other side stays untouched
+     */
+    private static SizeHistogram mergedSizes(SizeHistogram kept, SizeHistogram[] otherSizes, int otherSlot) {
+        SizeHistogram merged = kept != null ? kept : new SizeHistogram();
+        if (otherSizes != null && otherSizes[otherSlot] != null) {
+            merged.merge(otherSizes[otherSlot]);
+        }
+        return merged;
+    }
+
+    /**
+     * @return whether the counts are exact, which holds until more than capacity distinct values were seen
+     */
+    boolean isExact() {
+        flush();
+        return exact;
+    }
+
+    /**
+     * @return the most counted values by decreasing count, at most limit of them
+     */
+    List<DashboardAggregate.Ranked> ranking(int limit) {
+        flush();
+        List<DashboardAggregate.Ranked> ranking = new ArrayList<>();
+        for (int slot = 0; slot < Math.min(limit, size); slot++) {
+            ranking.add(new DashboardAggregate.Ranked(values[slot], (int) counts[slot], (int) errors[slot],
+                    details[slot], sizes == null ? null : sizes[slot].summary()));
+        }
+        return ranking;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        flush();
+        out.writeBoolean(exact);
+        out.writeInt(size);
+        for (int slot = 0; slot < size; slot++) {
+            RollupStore.writeString(out, values[slot]);
+            out.writeLong(counts[slot]);
+            out.writeLong(errors[slot]);
+            out.writeBoolean(details[slot] != null);
+            if (details[slot] != null) {
+                RollupStore.writeString(out, details[slot]);
+            }
+            if (sizes != null) {
+                sizes[slot].write(out);
+            }
+        }
+    }
+
+    void read(DataInputStream in) throws IOException {
+        boolean readExact = in.readBoolean();
+        int readSize = in.readInt();
+        String[] readValues = new String[readSize];
+        String[] readDetails = new String[readSize];
+        long[] readCounts = new long[readSize];
+        long[] readErrors = new long[readSize];
+        SizeHistogram[] readSizes = sizes == null ? null : new SizeHistogram[readSize];
+        for (int i = 0; i < readSize; i++) {
+            readValues[i] = RollupStore.readString(in);
+            readCounts[i] = in.readLong();
+            readErrors[i] = in.readLong();
+            readDetails[i] = in.readBoolean() ? RollupStore.readString(in) : null;
+            if (readSizes != null) {
+                readSizes[i] = new SizeHistogram();
+                readSizes[i].read(in);
+            }
+        }
+        absorb(readValues, readCounts, readErrors, readDetails, readSizes, readSize, 0, readExact);
+    }
+}
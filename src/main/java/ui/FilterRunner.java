@@ -0,0 +1,184 @@
+package ui;
+
+import javafx.animation.PauseTransition;
+import javafx.concurrent.Task;
+import javafx.scene.control.ProgressIndicator;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.util.Duration;
+import search.SearchTimeoutException;
+import utility.Utility;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the filtering of a log view off the JavaFX application thread.
+ * Requests can be debounced while the user types, a new request cancels the one in flight,
+ * and the progress indicator spins until the matching rows replace the table items at once.
+ * Results are VirtualRowLists, which the table sorts by reordering row ids: the ids are sorted on
+ * the same background thread, and only the new order is applied on the JavaFX application thread.
+ */
+public final class FilterRunner<T> {
+    @FunctionalInterface
+    public interface Filter<T> {
+        /**
+         * Loads and filters the rows, called on a background thread.
+         * Long loops should stop by throwing CancellationException once the thread is interrupted.
+         */
+        VirtualRowList<T> run() throws Exception;
+    }
+
+    private static final Logger logger = Logger.getLogger(FilterRunner.class.getName());
+    private static final Duration DEBOUNCE_DELAY = Duration.millis(300);
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "log-filter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final TableView<T> tableView;
+    private final ProgressIndicator progressIndicator;
+    private final PauseTransition debounce = new PauseTransition(DEBOUNCE_DELAY);
+    private Task<VirtualRowList<T>> current;
+    private Task<int[]> sorting;
+
+    /**
+     * @param progressIndicator: shown while a filter runs, may be null
+     */
+    public FilterRunner(TableView<T> tableView, ProgressIndicator progressIndicator) {
+        this.tableView = tableView;
+        this.progressIndicator = progressIndicator;
+        tableView.setSortPolicy(table -> {
+            if (table.getItems() instanceof VirtualRowList<T> rows) {
+                return sort(rows);
+            }
+            return TableView.DEFAULT_SORT_POLICY.call(table);
+        });
+    }
+
+    /**
+     * Sorts the rows by the sort order of the table in the background, the table keeps its current
+     * order until then. A newer sort or filter cancels it.
+     * @return false when a column of the sort order has no sort key, the table then undoes the sort
+     */
+    private boolean sort(VirtualRowList<T> rows) {
+        List<Supplier<IntUnaryOperator>> keys = new ArrayList<>();
+        List<Boolean> descending = new ArrayList<>();
+        for (TableColumn<T, ?> column : tableView.getSortOrder()) {
+            Supplier<IntUnaryOperator> key = rows.sortKey(column);
+            if (key == null) {
+                return false;
+            }
+            keys.add(key);
+            descending.add(column.getSortType() == TableColumn.SortType.DESCENDING);
+        }
+        cancelSort();
+        if (keys.isEmpty()) {
+            rows.applyOrder(null);
+            return true;
+        }
+        Task<int[]> task = new Task<>() {
+            @Override
+            protected int[] call() {
+                return rows.sortedOrder(keys, descending);
+            }
+        };
+        task.setOnSucceeded(event -> {
+            if (sorting == task && tableView.getItems() == rows) {
+                rows.applyOrder(task.getValue());
+            }
+            updateProgress();
+        });
+        task.setOnFailed(event -> {
+            updateProgress();
+            logger.log(Level.WARNING, "Sorting the log view failed.", task.getException());
+        });
+        task.setOnCancelled(event -> updateProgress());
+        sorting = task;
+        updateProgress();
+        executor.execute(task);
+        return true;
+    }
+
+    /**
+     * Runs the filter once no other request came in for a short delay, typically on every keystroke.
+     * Must be called on the JavaFX application thread.
+     */
+    public void runDebounced(Runnable request) {
+        debounce.setOnFinished(event -> request.run());
+        debounce.playFromStart();
+    }
+
+    /**
+     * Cancels the filter in flight and starts this one, the table rows are replaced once it completes.
+     * Must be called on the JavaFX application thread.
+     */
+    public void run(Filter<T> filter) {
+        debounce.stop();
+        cancel();
+        // the new rows are sorted once they replace the table items
+        cancelSort();
+        Task<VirtualRowList<T>> task = new Task<>() {
+            @Override
+            protected VirtualRowList<T> call() throws Exception {
+                return filter.run();
+            }
+        };
+        task.setOnFailed(event -> {
+            updateProgress();
+            if (task.getException() instanceof SearchTimeoutException timeout) {
+                Utility.showAlert("Search stopped", timeout.getMessage());
+                return;
+            }
+            logger.log(Level.WARNING, "Filtering the log view failed.", task.getException());
+        });
+        task.setOnSucceeded(event -> {
+            tableView.setItems(task.getValue());
+            updateProgress();
+        });
+        task.setOnCancelled(event -> updateProgress());
+        current = task;
+        updateProgress();
+        executor.execute(task);
+    }
+
+    /**
+     * Aborts the filter in flight, the table keeps the rows of the last completed one.
+     */
+    public void cancel() {
+        if (current != null) {
+            current.cancel(true);
+            current = null;
+            updateProgress();
+        }
+    }
+
+    private void cancelSort() {
+        if (sorting != null) {
+            sorting.cancel(true);
+            sorting = null;
+            updateProgress();
+        }
+    }
+
+    /**
+     * Spins the progress indicator while a filter or a sort is running.
+     */
+    private void updateProgress() {
+        if (progressIndicator == null) {
+            return;
+        }
+        boolean running = current != null && !current.isDone() || sorting != null && !sorting.isDone();
+        if (running && !progressIndicator.isVisible()) {
+            progressIndicator.setProgress(ProgressIndicator.INDETERMINATE_PROGRESS);
+        }
+        progressIndicator.setVisible(running);
+    }
+}
@@ -0,0 +1,158 @@
+package ui;
+
+import javafx.collections.ObservableListBase;
+import javafx.scene.control.TableColumn;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * Read-only ObservableList over the matching rows of a loaded day, for TableView items.
+ * It holds only the row ids, 4 bytes per result, and materialises row objects through the
+ * accessor for a window around the index last asked for: the viewport the table is drawing and
+ * a prefetch margin, so scrolling back and forth does not build the same rows again.
+ * Columns sort on a non-negative int key per row id read from the columnar day, e.g. the status
+ * code or the rank of a dictionary id, so sorting never builds rows and can run in the background.
+ * Must only be used on the JavaFX application thread, except sortedOrder.
+ */
+public final class VirtualRowList<T> extends ObservableListBase<T> {
+    private static final int WINDOW_SIZE = 256;
+    private static final int WINDOW_LEAD = WINDOW_SIZE / 4;
+
+    private final int[] originalRows;
+    private final IntFunction<? extends T> accessor;
+    private final Map<TableColumn<T, ?>, Supplier<IntUnaryOperator>> sortKeys;
+    private int[] rows;
+    // index in originalRows of every row, null in the original order
+    private int[] order;
+    private final Object[] window = new Object[WINDOW_SIZE];
+    private int windowStart = -1;
+    private int windowEnd = -1;
+
+    /**
+     * @param rows: ids of the rows to show, in ascending order
+     * @param accessor: builds the row object of a row id
+     */
+    public VirtualRowList(int[] rows, IntFunction<? extends T> accessor) {
+        this(rows, accessor, Map.of());
+    }
+
+    /**
+     * @param sortKeys: key of the row ids for every sortable column, created when the column is first sorted,
+     *                the columns without a key cannot be sorted
+     */
+    public VirtualRowList(int[] rows, IntFunction<? extends T> accessor,
+                          Map<TableColumn<T, ?>, Supplier<IntUnaryOperator>> sortKeys) {
+        this.originalRows = rows;
+        this.rows = rows;
+        this.accessor = accessor;
+        this.sortKeys = sortKeys;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        if (index < 0 || index >= rows.length) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of " + rows.length);
+        }
+        if (index < windowStart || index >= windowEnd) {
+            // mostly scrolling down, so keep a smaller margin above the index than below it
+            fillWindow(Math.max(0, index - WINDOW_LEAD));
+        }
+        return (T) window[index - windowStart];
+    }
+
+    @Override
+    public int size() {
+        return rows.length;
+    }
+
+    /**
+     * @return the key of the column, null when it cannot be sorted
+     */
+    public Supplier<IntUnaryOperator> sortKey(TableColumn<T, ?> column) {
+        return sortKeys.get(column);
+    }
+
+    /**
+     * Sorts the rows by the keys, the first one first, rows with equal keys keeping their original order.
+     * Safe to call from a background thread, it only reads the row ids.
+     * @param keys: keys as returned by sortKey
+     * @param descending: whether each key sorts in descending order
+     * @return the order to pass to applyOrder
+     * @throws CancellationException when the thread is interrupted
+     */
+    public int[] sortedOrder(List<Supplier<IntUnaryOperator>> keys, List<Boolean> descending) {
+        int[] sorted = new int[originalRows.length];
+        for (int index = 0; index < sorted.length; index++) {
+            sorted[index] = index;
+        }
+        // a stable sort per key, the last key first, so that earlier keys take precedence
+        long[] packed = new long[sorted.length];
+        for (int keyIndex = keys.size() - 1; keyIndex >= 0; keyIndex--) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Sort cancelled");
+            }
+            IntUnaryOperator key = keys.get(keyIndex).get();
+            boolean reversed = descending.get(keyIndex);
+            for (int index = 0; index < sorted.length; index++) {
+                long value = key.applyAsInt(originalRows[sorted[index]]);
+                // the position breaks ties, which keeps the sort stable
+                packed[index] = (reversed ? Integer.MAX_VALUE - value : value) << 32 | index;
+            }
+            Arrays.sort(packed);
+            int[] previous = sorted.clone();
+            for (int index = 0; index < sorted.length; index++) {
+                sorted[index] = previous[(int) packed[index]];
+            }
+        }
+        return sorted;
+    }
+
+    /**
+     * Reorders the rows for a sorted TableView, or restores the original order when sorted is null.
+     * @param sorted: as returned by sortedOrder
+     */
+    public void applyOrder(int[] sorted) {
+        // the original index of every old index, then its new index
+        int[] newIndexOf = new int[originalRows.length];
+        for (int index = 0; index < newIndexOf.length; index++) {
+            newIndexOf[sorted == null ? index : sorted[index]] = index;
+        }
+        // permutation[old index] = new index, as reported to the listeners
+        int[] permutation = new int[rows.length];
+        for (int index = 0; index < rows.length; index++) {
+            permutation[index] = newIndexOf[order == null ? index : order[index]];
+        }
+        order = sorted;
+        if (sorted == null) {
+            rows = originalRows;
+        } else {
+            rows = new int[sorted.length];
+            for (int index = 0; index < sorted.length; index++) {
+                rows[index] = originalRows[sorted[index]];
+            }
+        }
+        windowStart = -1;
+        windowEnd = -1;
+        Arrays.fill(window, null);
+        beginChange();
+        nextPermutation(0, rows.length, permutation);
+        endChange();
+    }
+
+    private void fillWindow(int start) {
+        int end = Math.min(rows.length, start + WINDOW_SIZE);
+        for (int index = start; index < end; index++) {
+            window[index - start] = accessor.apply(rows[index]);
+        }
+        Arrays.fill(window, end - start, WINDOW_SIZE, null);
+        windowStart = start;
+        windowEnd = end;
+    }
+}
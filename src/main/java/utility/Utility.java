@@ -3,6 +3,7 @@ package utility;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import javafx.application.Platform;
 import javafx.scene.control.Alert;
 
 import java.awt.event.WindowAdapter;
@@ -117,6 +118,11 @@ public class Utility {
 
 
     public static void showAlert(String title, String message) {
+        if (!Platform.isFxApplicationThread()) {
+            // raised from a background load, the alert itself has to live on the UI thread
+            Platform.runLater(() -> showAlert(title, message));
+            return;
+        }
         Alert alert = new Alert(Alert.AlertType.ERROR);
         alert.setTitle(title);
         alert.setHeaderText(null);